@@ -0,0 +1,183 @@
+package dric.camera;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import dric.type.CameraFrame;
+import marmot.RecordWriteSession;
+import marmot.dataset.DataSet;
+import marmot.stream.PipedRecordStream;
+import utils.Utilities;
+import utils.func.Try;
+
+/**
+ * 카메라 프레임들을 모아 한번에 topic에 기록하는 publisher를 정의한다.
+ * <p>
+ * 프레임들은 {@code batchSize}개가 모이거나 첫 프레임이 추가된 후 {@code linger} 시간이
+ * 지나면, 미리 채워진 크기 제한 레코드 스트림으로 묶여 한번의 {@link DataSet#write} 호출로
+ * 기록된다. 묶음이 가득 차지 않은 경우에도 {@code linger} 시간 이상 기다리지 않도록
+ * {@code linger}는 0보다 커야 한다.
+ * {@code batchSize}가 1 이하인 경우는 묶지 않고 하나의 write session을 계속 사용하여 바로
+ * 기록하며, 기록에 실패한 경우에만 session을 닫고 다음 기록시 새로 연다.
+ * close될 때는 남아있는 프레임들을 모두 기록한다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+class BatchedFramePublisher implements AutoCloseable {
+	private static final Logger s_logger = LoggerFactory.getLogger(BatchedFramePublisher.class);
+	
+	private final String m_name;
+	private final DataSet m_topic;
+	private final int m_batchSize;
+	private final long m_linger;
+	private final ScheduledExecutorService m_flusher;	// 묶지 않는 경우는 null
+	
+	private RecordWriteSession m_session;	// 묶지 않는 경우에만 사용된다.
+	private List<CameraFrame> m_batch;
+	private long m_batchStarted;
+	private boolean m_closed = false;
+	private long m_frameCount = 0;
+	private long m_batchCount = 0;
+	private long m_failedCount = 0;
+	
+	BatchedFramePublisher(String name, DataSet topic, int batchSize, long linger) {
+		Utilities.checkNotNullArgument(topic);
+		Utilities.checkArgument(batchSize <= 1 || linger > 0,
+								"linger should be positive for batches: linger=" + linger);
+		
+		m_name = name;
+		m_topic = topic;
+		m_batchSize = Math.max(1, batchSize);
+		m_linger = linger;
+		m_batch = Lists.newArrayListWithCapacity(m_batchSize);
+		
+		if ( m_batchSize > 1 ) {
+			m_flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+															.setNameFormat("dric-flusher-" + name)
+															.setDaemon(true)
+															.build());
+			m_flusher.scheduleWithFixedDelay(this::flushIfLingered, linger, Math.max(1, linger / 2),
+											TimeUnit.MILLISECONDS);
+		}
+		else {
+			m_flusher = null;
+		}
+	}
+	
+	/**
+	 * 주어진 프레임을 topic에 기록한다.
+	 * <p>
+	 * 프레임들을 묶어 기록하는 경우는 batch가 가득 찬 경우에만 호출 쓰레드에서 기록된다.
+	 * 기록에 실패한 프레임들은 로그만 남기고 버려진다.
+	 */
+	synchronized void publish(CameraFrame frame) {
+		if ( m_closed ) {
+			return;
+		}
+		
+		if ( m_batchSize == 1 ) {
+			writeDirect(frame);
+			return;
+		}
+		
+		if ( m_batch.isEmpty() ) {
+			m_batchStarted = System.currentTimeMillis();
+		}
+		m_batch.add(frame);
+		if ( m_batch.size() >= m_batchSize ) {
+			flush();
+		}
+	}
+	
+	/**
+	 * 지금까지 모인 프레임들을 topic에 기록한다.
+	 */
+	synchronized void flush() {
+		if ( m_batch.isEmpty() ) {
+			return;
+		}
+		
+		List<CameraFrame> batch = m_batch;
+		m_batch = Lists.newArrayListWithCapacity(m_batchSize);
+		
+		try {
+			PipedRecordStream stream = new PipedRecordStream(m_topic.getRecordSchema(), batch.size());
+			for ( CameraFrame frame: batch ) {
+				stream.supply(frame.toRecord());
+			}
+			stream.endOfSupply();
+			
+			m_topic.write(stream);
+			m_frameCount += batch.size();
+			++m_batchCount;
+		}
+		catch ( Exception e ) {
+			m_failedCount += batch.size();
+			s_logger.warn("fails to publish camera frames: publisher={}, count={}, cause={}",
+							m_name, batch.size(), e.toString());
+		}
+	}
+	
+	@Override
+	public void close() {
+		if ( m_flusher != null ) {
+			m_flusher.shutdown();
+		}
+		
+		synchronized ( this ) {
+			if ( m_closed ) {
+				return;
+			}
+			
+			flush();
+			m_closed = true;
+			closeSession();
+		}
+		
+		if ( s_logger.isInfoEnabled() ) {
+			s_logger.info("closed: publisher={}, frames={}, batches={}, failed={}",
+							m_name, m_frameCount, m_batchCount, m_failedCount);
+		}
+	}
+	
+	private synchronized void flushIfLingered() {
+		if ( !m_batch.isEmpty() && System.currentTimeMillis() - m_batchStarted >= m_linger ) {
+			flush();
+		}
+	}
+	
+	private void writeDirect(CameraFrame frame) {
+		try {
+			getSession().write(frame.toRecord());
+			++m_frameCount;
+		}
+		catch ( Exception e ) {
+			++m_failedCount;
+			s_logger.warn("fails to publish a camera frame: publisher={}, cause={}", m_name, e.toString());
+			closeSession();
+		}
+	}
+	
+	private RecordWriteSession getSession() {
+		if ( m_session == null ) {
+			m_session = m_topic.openWriteSession();
+		}
+		return m_session;
+	}
+	
+	private void closeSession() {
+		// 다음 프레임은 새 session을 통해 기록한다.
+		if ( m_session != null ) {
+			Try.run(m_session::close);
+			m_session = null;
+		}
+	}
+}
@@ -9,6 +9,8 @@ import java.util.Map;
 import dric.ConfigUtils;
 import dric.proto.EndPoint;
 import dric.proto.JdbcEndPoint;
+import dric.video.Configs;
+import dric.video.JdbcPoolConfig;
 
 /**
  * 
@@ -18,14 +20,19 @@ public class CameraAgentConfig {
 	private final EndPoint m_platformEp;
 	private final VideoConfig m_videoConfig;
 	private final JdbcEndPoint m_jdbcEp;
+	private final JdbcPoolConfig m_jdbcPoolConfig;
 	private final List<File> m_openCvDllList;
+	private final int m_workerThreadCount;
 	
 	private CameraAgentConfig(EndPoint ep, VideoConfig videoConfig, JdbcEndPoint jdbcEp,
-								List<File> openCvDllFiles) {
+								JdbcPoolConfig jdbcPoolConfig,
+								List<File> openCvDllFiles, int workerThreadCount) {
 		m_platformEp = ep;
 		m_videoConfig = videoConfig;
 		m_jdbcEp = jdbcEp;
+		m_jdbcPoolConfig = jdbcPoolConfig;
 		m_openCvDllList = openCvDllFiles;
+		m_workerThreadCount = workerThreadCount;
 	}
 	
 	public static CameraAgentConfig from(File configFile, Map<String,String> bindings)
@@ -38,9 +45,11 @@ public class CameraAgentConfig {
 		EndPoint platformEp = ConfigUtils.parseEndPoint(config, "dric_platform");
 		VideoConfig videoConfig = VideoConfig.from((Map<String,Object>)config.get("video_store"));
 		JdbcEndPoint jdbc = ConfigUtils.parseJdbcEndPoint(config, "jdbc");
+		JdbcPoolConfig jdbcPool = JdbcPoolConfig.from(Configs.getSubConfigOrEmpty(config, "jdbc"));
 		List<File> dllFileList = ConfigUtils.parseOpenCvDllFiles(config, "opencv_dlls");
+		int nworkers = Configs.getInt(config, "worker_threads", Runtime.getRuntime().availableProcessors());
 
-		return new CameraAgentConfig(platformEp, videoConfig, jdbc, dllFileList);
+		return new CameraAgentConfig(platformEp, videoConfig, jdbc, jdbcPool, dllFileList, nworkers);
 	}
 	
 	public EndPoint getPlatformEndPoint() {
@@ -55,7 +64,19 @@ public class CameraAgentConfig {
 		return m_jdbcEp;
 	}
 	
+	public JdbcPoolConfig getJdbcPoolConfig() {
+		return m_jdbcPoolConfig;
+	}
+	
 	public List<File> getOpenCvDllList() {
 		return m_openCvDllList;
 	}
+	
+	/**
+	 * 여러 카메라를 하나의 프로세스에서 운용하는 경우, 카메라들이 공유하는
+	 * 인코딩/전송용 worker 쓰레드의 갯수를 반환한다.
+	 */
+	public int getWorkerThreadCount() {
+		return m_workerThreadCount;
+	}
 }
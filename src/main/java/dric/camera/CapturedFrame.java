@@ -0,0 +1,41 @@
+package dric.camera;
+
+import org.opencv.core.Mat;
+
+import opencvj.MatPool;
+
+/**
+ * 카메라에서 캡쳐된 프레임 이미지와 캡쳐 시각을 정의한다.
+ * <p>
+ * 프레임 이미지는 {@link MatPool}에서 할당된 슬롯에 저장된다. 하나의 프레임은 여러
+ * 파이프라인 단계에서 공유되기 때문에 각 단계는 처리가 끝나면 {@link #release()}를
+ * 호출하고, 모든 단계에서 호출된 경우에 슬롯이 pool에 반환된다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class CapturedFrame {
+	private final MatPool.Slot m_slot;
+	private final long m_ts;
+	
+	CapturedFrame(MatPool.Slot slot, long ts) {
+		m_slot = slot;
+		m_ts = ts;
+	}
+	
+	Mat image() {
+		return m_slot.mat();
+	}
+	
+	long ts() {
+		return m_ts;
+	}
+	
+	void release() {
+		m_slot.release();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("CapturedFrame[ts=%d, size=%s]", m_ts, m_slot.mat().size());
+	}
+}
@@ -3,6 +3,7 @@ package dric.camera;
 import java.io.File;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executor;
 
 import org.opencv.core.Size;
 import org.opencv.videoio.VideoCapture;
@@ -13,17 +14,17 @@ import org.slf4j.LoggerFactory;
 
 import dric.ConfigUtils;
 import dric.proto.CameraInfo;
+import dric.video.JdbcConnectionPool;
 import marmot.dataset.DataSet;
 import utils.LocalDateTimes;
 import utils.func.CheckedRunnable;
 import utils.func.Tuple;
-import utils.jdbc.JdbcProcessor;
 
 /**
  * 
  * @author Kang-Woo Lee (ETRI)
  */
-public class DrICCameraAgent implements CheckedRunnable {
+public class DrICCameraAgent implements CheckedRunnable, AutoCloseable {
 	private static final Logger s_logger = LoggerFactory.getLogger(DrICCameraAgent.class);
 	private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
 	
@@ -31,17 +32,65 @@ public class DrICCameraAgent implements CheckedRunnable {
 	private final DataSet m_topic;
 	private final CameraAgentConfig m_config;
 	private final boolean m_noVideo;
-	private final JdbcProcessor m_jdbc;
+	private final JdbcConnectionPool m_jdbcPool;
+	private final boolean m_ownsJdbcPool;	// 에이전트가 생성한 pool인 경우는 close될 때 함께 close한다.
+	private final Executor m_workers;
 	
 	private volatile Size m_resol;
 	private volatile VideoCapture m_camera;
 	
+	/**
+	 * 단독으로 동작하는 에이전트를 생성한다.
+	 * <p>
+	 * 에이전트는 전용 JDBC 연결 pool을 생성하며, 생성된 pool은 {@link #close()}에서 close된다.
+	 * 
+	 * @param info	카메라 정보
+	 * @param topic	캡쳐된 프레임이 전송될 topic
+	 * @param noVideo	비디오 파일 생성 여부
+	 * @param config	에이전트 설정 정보
+	 */
 	public DrICCameraAgent(CameraInfo info, DataSet topic, boolean noVideo, CameraAgentConfig config) {
+		this(info, topic, noVideo, config,
+			new JdbcConnectionPool(ConfigUtils.getJdbcProcessor(config.getJdbcEndPoint()),
+									config.getJdbcPoolConfig()), true, null);
+	}
+	
+	/**
+	 * 다른 카메라 에이전트들과 JDBC 연결 pool 및 worker 쓰레드들을 공유하는 에이전트를 생성한다.
+	 * 
+	 * @param info	카메라 정보
+	 * @param topic	캡쳐된 프레임이 전송될 topic
+	 * @param noVideo	비디오 파일 생성 여부
+	 * @param config	에이전트 설정 정보
+	 * @param jdbcPool	공유할 JDBC 연결 pool
+	 * @param workers	인코딩/전송 단계에서 공유할 worker executor.
+	 * 					{@code null}인 경우는 단계별로 별도의 쓰레드를 사용한다.
+	 */
+	public DrICCameraAgent(CameraInfo info, DataSet topic, boolean noVideo, CameraAgentConfig config,
+							JdbcConnectionPool jdbcPool, Executor workers) {
+		this(info, topic, noVideo, config, jdbcPool, false, workers);
+	}
+	
+	private DrICCameraAgent(CameraInfo info, DataSet topic, boolean noVideo, CameraAgentConfig config,
+							JdbcConnectionPool jdbcPool, boolean ownsJdbcPool, Executor workers) {
 		m_info = info;
 		m_topic = topic;
 		m_noVideo = noVideo;
 		m_config = config;
-		m_jdbc = ConfigUtils.getJdbcProcessor(config.getJdbcEndPoint());
+		m_jdbcPool = jdbcPool;
+		m_ownsJdbcPool = ownsJdbcPool;
+		m_workers = workers;
+	}
+	
+	/**
+	 * 에이전트가 생성한 JDBC 연결 pool을 close한다.
+	 * 다른 에이전트들과 공유하는 pool은 pool을 생성한 쪽에서 close해야 한다.
+	 */
+	@Override
+	public void close() {
+		if ( m_ownsJdbcPool ) {
+			m_jdbcPool.close();
+		}
 	}
 	
 	String getCameraId() {
@@ -52,14 +101,22 @@ public class DrICCameraAgent implements CheckedRunnable {
 		return m_resol;
 	}
 	
-	JdbcProcessor getJdbcProcessor() {
-		return m_jdbc;
+	JdbcConnectionPool getConnectionPool() {
+		return m_jdbcPool;
+	}
+	
+	Executor getWorkerExecutor() {
+		return m_workers;
 	}
 	
 	float getFps() {
 		return m_config.getVideoConfig().getFps();
 	}
 	
+	VideoConfig getVideoConfig() {
+		return m_config.getVideoConfig();
+	}
+	
 	long getVideoTailInterval() {
 		return m_config.getVideoConfig().getTailInterval();
 	}
@@ -81,11 +138,13 @@ public class DrICCameraAgent implements CheckedRunnable {
 		long sampleInterval = Math.round(1000.0 / m_config.getVideoConfig().getFps());
 		
 		if ( s_logger.isInfoEnabled() ) {
-			s_logger.info("start capturing: camera={}, resol={}, fps={}, sample_interval={}ms",
-							m_info.getId(), m_resol, m_config.getVideoConfig().getFps(), sampleInterval);
+			s_logger.info("start capturing: camera={}, resol={}, fps={}, sample_interval={}ms, mode={}",
+							m_info.getId(), m_resol, m_config.getVideoConfig().getFps(), sampleInterval,
+							m_config.getVideoConfig().getSampleMode());
 		}
 		
-		try ( OpenCvFrameSampler samples = new OpenCvFrameSampler(m_camera, sampleInterval);
+		OpenCvFrameSampler.Mode mode = m_config.getVideoConfig().getSampleMode();
+		try ( OpenCvFrameSampler samples = new OpenCvFrameSampler(m_camera, sampleInterval, mode);
 				SampleFrameProcessor proc = new SampleFrameProcessor(this, m_noVideo); ) {
 			samples.forEachOrThrow(proc);
 		}
@@ -0,0 +1,88 @@
+package dric.camera;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import dric.ConfigUtils;
+import dric.proto.CameraInfo;
+import dric.video.JdbcConnectionPool;
+import marmot.dataset.DataSet;
+import utils.func.CheckedRunnable;
+
+/**
+ * 하나의 프로세스에서 여러 카메라를 운용하는 에이전트를 정의한다.
+ * <p>
+ * 각 카메라는 별도의 캡쳐 쓰레드를 사용하고, JPEG 인코딩은 모든 카메라가 공유하는
+ * 고정 크기의 worker pool에서 수행된다. topic 기록은 지연될 수 있는 블로킹 작업이므로
+ * 공유 worker나 공용 ForkJoin pool이 아닌 카메라별 전송 쓰레드에서 수행되며, 대기할 수 있는
+ * 인코딩 결과 전달(전송 큐 추가, tail 프레임 저장) 역시 카메라별 전달 쓰레드에서 수행된다.
+ * 데이터베이스 연결 역시 모든 카메라가 하나의 JDBC 연결 pool을 공유한다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class DrICCameraAgentGroup implements CheckedRunnable {
+	private static final Logger s_logger = LoggerFactory.getLogger(DrICCameraAgentGroup.class);
+	
+	private final List<CameraInfo> m_cameras;
+	private final DataSet m_topic;
+	private final boolean m_noVideo;
+	private final CameraAgentConfig m_config;
+	
+	public DrICCameraAgentGroup(List<CameraInfo> cameras, DataSet topic, boolean noVideo,
+								CameraAgentConfig config) {
+		m_cameras = cameras;
+		m_topic = topic;
+		m_noVideo = noVideo;
+		m_config = config;
+	}
+	
+	@Override
+	public void run() throws Throwable {
+		ExecutorService workers = Executors.newFixedThreadPool(m_config.getWorkerThreadCount(),
+																new ThreadFactoryBuilder()
+																	.setNameFormat("dric-worker-%d")
+																	.setDaemon(true)
+																	.build());
+		JdbcConnectionPool jdbcPool = new JdbcConnectionPool(ConfigUtils.getJdbcProcessor(m_config.getJdbcEndPoint()),
+															m_config.getJdbcPoolConfig());
+		if ( s_logger.isInfoEnabled() ) {
+			s_logger.info("start camera agents: ncameras={}, nworkers={}",
+							m_cameras.size(), m_config.getWorkerThreadCount());
+		}
+		
+		try {
+			List<Thread> threads = Lists.newArrayList();
+			for ( CameraInfo info: m_cameras ) {
+				DrICCameraAgent agent = new DrICCameraAgent(info, m_topic, m_noVideo, m_config,
+															jdbcPool, workers);
+				Thread thread = new Thread(() -> runAgent(agent), "dric-capture-" + info.getId());
+				thread.start();
+				threads.add(thread);
+			}
+			
+			for ( Thread thread: threads ) {
+				thread.join();
+			}
+		}
+		finally {
+			workers.shutdown();
+			jdbcPool.close();
+		}
+	}
+	
+	private void runAgent(DrICCameraAgent agent) {
+		try {
+			agent.run();
+		}
+		catch ( Throwable e ) {
+			s_logger.error("camera agent failed: camera={}, cause={}", agent.getCameraId(), e.toString());
+		}
+	}
+}
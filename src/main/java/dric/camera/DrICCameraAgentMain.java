@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -11,6 +12,7 @@ import org.apache.log4j.PropertyConfigurator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import dric.DrICClient;
@@ -30,6 +32,7 @@ import picocli.CommandLine.Parameters;
 import picocli.CommandLine.Spec;
 import utils.UsageHelp;
 import utils.Utilities;
+import utils.stream.FStream;
 
 /**
  * 
@@ -39,12 +42,16 @@ public class DrICCameraAgentMain implements Runnable {
 	private static final Logger s_logger = LoggerFactory.getLogger(DrICCameraAgentMain.class);
 	private static final String ENV_VAR_HOME = "DRIC_CAMERA_HOME";
 	private static final String DEF_CONFIG_FILE = "camera_agent.yaml";
+	private static final String DEF_CLIENT_ID = "dric_camera_agent";
 	
 	@Spec private CommandSpec m_spec;
 	@Mixin private UsageHelp m_help;
 	
-	@Parameters(paramLabel="camera-id", index="0", description={"camera id"})
-	private String m_cameraId;
+	@Parameters(paramLabel="camera-id", index="0..*", description={"camera ids"})
+	private List<String> m_cameraIds = Lists.newArrayList();
+	
+	@Option(names={"--all"}, description={"capture all cameras registered in the video server"})
+	private boolean m_allCameras = false;
 	
 	private File m_homeDir;
 	@Option(names={"--home"}, paramLabel="path", description={"DrICVideoServer Home Directory"})
@@ -88,21 +95,39 @@ public class DrICCameraAgentMain implements Runnable {
 				OpenCvInitializer.initialize();
 			}
 			
-			DrICClient client = DrICClient.connect(config.getPlatformEndPoint(), m_cameraId);
+			if ( !m_allCameras && m_cameraIds.isEmpty() ) {
+				throw new IllegalArgumentException("no camera is specified");
+			}
+			String clientId = (!m_allCameras && m_cameraIds.size() == 1) ? m_cameraIds.get(0) : DEF_CLIENT_ID;
+			DrICClient client = DrICClient.connect(config.getPlatformEndPoint(), clientId);
 	    	
-	    	CameraInfo camInfo = null;
+	    	List<CameraInfo> cameras;
 			try ( PBDrICVideoServerProxy vserver = client.getVideoServer() ) {
-				camInfo = vserver.getCamera(m_cameraId);
+				if ( m_allCameras ) {
+					cameras = vserver.getCameraAll().toList();
+				}
+				else {
+					cameras = FStream.from(m_cameraIds).mapOrThrow(vserver::getCamera).toList();
+				}
 			}
 			if ( m_verbose ) {
 				float fps = config.getVideoConfig().getFps();
-				System.out.printf("camera=%s, url=%s, fps=%.1f, fourcc=%s, dir=%s%n", camInfo.getId(), camInfo.getRtspUrl(),
-									fps, config.getVideoConfig().getFourccString(), config.getVideoConfig().getVideoDir());
+				for ( CameraInfo camInfo: cameras ) {
+					System.out.printf("camera=%s, url=%s, fps=%.1f, fourcc=%s, dir=%s%n", camInfo.getId(), camInfo.getRtspUrl(),
+										fps, config.getVideoConfig().getFourccString(), config.getVideoConfig().getVideoDir());
+				}
 			}
 			
 			DataSet topic = client.getDataSet(CameraFrame.DATASET_ID);
-			DrICCameraAgent agent = new DrICCameraAgent(camInfo, topic, m_noVideo, config);
-			agent.run();
+			if ( cameras.size() == 1 ) {
+				try ( DrICCameraAgent agent = new DrICCameraAgent(cameras.get(0), topic, m_noVideo, config) ) {
+					agent.run();
+				}
+			}
+			else {
+				DrICCameraAgentGroup agents = new DrICCameraAgentGroup(cameras, topic, m_noVideo, config);
+				agents.run();
+			}
 		}
 		catch ( Throwable e ) {
 			System.err.printf("failed: %s%n%n", e);
@@ -5,14 +5,13 @@ import java.io.File;
 import java.util.List;
 
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dric.type.CameraFrame;
-import marmot.RecordWriteSession;
 import marmot.dataset.DataSet;
+import opencvj.JpegEncoder;
 import utils.StopWatch;
 import utils.func.CheckedRunnable;
 import utils.func.Try;
@@ -29,12 +28,33 @@ public class DrICImagePlayer implements CheckedRunnable {
 	private final File m_imageDir;
 	private final DataSet m_topic;
 	private final float m_fps;
+	private final JpegEncoder m_encoder;
+	private final int m_publishBatchSize;
+	private final long m_publishLinger;
 	
 	public DrICImagePlayer(String cameraId, File imageDir, float fps, DataSet topic) {
+		this(cameraId, imageDir, fps, topic, JpegEncoder.DEFAULT);
+	}
+	
+	public DrICImagePlayer(String cameraId, File imageDir, float fps, DataSet topic, JpegEncoder encoder) {
+		this(cameraId, imageDir, fps, topic, encoder, 1, 0);
+	}
+	
+	/**
+	 * 프레임들을 묶어 topic에 기록하는 이미지 재생기를 생성한다.
+	 * 
+	 * @param publishBatchSize	한번에 기록할 최대 프레임 수. 1인 경우는 묶지 않는다.
+	 * @param publishLinger		프레임 묶음이 가득 차지 않더라도 기록하기까지 기다리는 최대 시간 (ms)
+	 */
+	public DrICImagePlayer(String cameraId, File imageDir, float fps, DataSet topic, JpegEncoder encoder,
+							int publishBatchSize, long publishLinger) {
 		m_cameraId = cameraId;
 		m_imageDir = imageDir;
 		m_fps = fps;
 		m_topic = topic;
+		m_encoder = encoder;
+		m_publishBatchSize = publishBatchSize;
+		m_publishLinger = publishLinger;
 	}
 	
 	String getCameraId() {
@@ -54,17 +74,17 @@ public class DrICImagePlayer implements CheckedRunnable {
 										.sort((f1, f2) -> f1.getName().compareTo(f2.getName()))
 										.toList();
 		
-		try ( RecordWriteSession session = m_topic.openWriteSession() ) {
-			final MatOfByte bmat = new MatOfByte();
+		try ( BatchedFramePublisher publisher = new BatchedFramePublisher(m_cameraId, m_topic,
+																	m_publishBatchSize, m_publishLinger) ) {
 			for ( File imgFile : imgFiles ) {
 				StopWatch watch = StopWatch.start();
 				
 				Mat mat = Imgcodecs.imread(imgFile.getAbsolutePath(), Imgcodecs.IMREAD_UNCHANGED);
-				Imgcodecs.imencode(".jpg", mat, bmat);
-				byte[] jpegBytes = bmat.toArray();
+				byte[] jpegBytes = m_encoder.encode(mat);
+				mat.release();
 				
 				CameraFrame frame = new CameraFrame(m_cameraId, jpegBytes, System.currentTimeMillis());
-				session.write(frame.toRecord());
+				publisher.publish(frame);
 				s_logger.debug("publish a image: " + imgFile);
 				long remains = interval - watch.stopInMillis();
 				
@@ -91,7 +91,10 @@ public class DrICImagePlayerMain implements Runnable {
 			
 			DrICClient client = DrICClient.connect(config.getPlatformEndPoint(), m_cameraId);
 			DataSet topic = client.getDataSet(CameraFrame.DATASET_ID);
-	    	DrICImagePlayer agent = new DrICImagePlayer(m_cameraId, m_imageDir, m_fps, topic);
+			VideoConfig vconf = config.getVideoConfig();
+	    	DrICImagePlayer agent = new DrICImagePlayer(m_cameraId, m_imageDir, m_fps, topic,
+												vconf.getPublishEncoder(m_cameraId),
+												vconf.getPublishBatchSize(), vconf.getPublishLinger());
 			do {
 				agent.run();
 			} while ( m_loop );
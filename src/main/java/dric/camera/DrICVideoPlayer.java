@@ -1,17 +1,15 @@
 package dric.camera;
 
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
 import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.videoio.VideoCapture;
 import org.opencv.videoio.Videoio;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dric.type.CameraFrame;
-import marmot.RecordWriteSession;
 import marmot.dataset.DataSet;
+import opencvj.JpegEncoder;
 import utils.StopWatch;
 import utils.func.CheckedRunnable;
 
@@ -25,16 +23,38 @@ public class DrICVideoPlayer implements CheckedRunnable {
 	private final String m_cameraId;
 	private final String m_videoFile;
 	private final DataSet m_topic;
+	private final JpegEncoder m_encoder;
+	private final int m_publishBatchSize;
+	private final long m_publishLinger;
 	
 	private volatile VideoCapture m_camera;
 	private volatile Size m_resol;
 	private volatile float m_fps;
 	
 	public DrICVideoPlayer(String cameraId, String videoFile, float fps, DataSet topic) {
+		this(cameraId, videoFile, fps, topic, JpegEncoder.DEFAULT);
+	}
+	
+	public DrICVideoPlayer(String cameraId, String videoFile, float fps, DataSet topic,
+							JpegEncoder encoder) {
+		this(cameraId, videoFile, fps, topic, encoder, 1, 0);
+	}
+	
+	/**
+	 * 프레임들을 묶어 topic에 기록하는 비디오 재생기를 생성한다.
+	 * 
+	 * @param publishBatchSize	한번에 기록할 최대 프레임 수. 1인 경우는 묶지 않는다.
+	 * @param publishLinger		프레임 묶음이 가득 차지 않더라도 기록하기까지 기다리는 최대 시간 (ms)
+	 */
+	public DrICVideoPlayer(String cameraId, String videoFile, float fps, DataSet topic,
+							JpegEncoder encoder, int publishBatchSize, long publishLinger) {
 		m_cameraId = cameraId;
 		m_videoFile = videoFile;
 		m_fps = fps;
 		m_topic = topic;
+		m_encoder = encoder;
+		m_publishBatchSize = publishBatchSize;
+		m_publishLinger = publishLinger;
 	}
 	
 	String getCameraId() {
@@ -69,13 +89,13 @@ public class DrICVideoPlayer implements CheckedRunnable {
 			s_logger.info("start capturing: camera={}:{}, resol={}, fps={}",
 							m_cameraId, m_videoFile, m_resol, m_fps);
 		}
-
+		
 		final Mat mat = new Mat();
-		final MatOfByte bmat = new MatOfByte();
 		long captureInterval = Math.round(1000 / m_fps);
 		
 		long elapsed = 0;
-		try ( RecordWriteSession session = m_topic.openWriteSession() ) {
+		try ( BatchedFramePublisher publisher = new BatchedFramePublisher(m_cameraId, m_topic,
+																	m_publishBatchSize, m_publishLinger) ) {
 			while ( m_camera.isOpened() ) {
 				long sleepMillis = Math.max(0, (captureInterval - elapsed));
 				Thread.sleep(sleepMillis);
@@ -85,11 +105,10 @@ public class DrICVideoPlayer implements CheckedRunnable {
 					break;
 				}
 				
-				Imgcodecs.imencode(".jpg", mat, bmat);
-				byte[] jpegBytes = bmat.toArray();
+				byte[] jpegBytes = m_encoder.encode(mat);
 				
 				CameraFrame frame = new CameraFrame(m_cameraId, jpegBytes, System.currentTimeMillis());
-				session.write(frame.toRecord());
+				publisher.publish(frame);
 				elapsed = watch.stopInMillis();
 			}
 		}
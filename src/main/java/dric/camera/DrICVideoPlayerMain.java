@@ -104,7 +104,10 @@ public class DrICVideoPlayerMain implements Runnable {
 			
 			DrICClient client = DrICClient.connect(config.getPlatformEndPoint(), m_cameraId);
 			DataSet topic = client.getDataSet(CameraFrame.DATASET_ID);
-			DrICVideoPlayer agent = new DrICVideoPlayer(m_cameraId, m_videoFile, m_fps, topic);
+			VideoConfig vconf = config.getVideoConfig();
+			DrICVideoPlayer agent = new DrICVideoPlayer(m_cameraId, m_videoFile, m_fps, topic,
+												vconf.getPublishEncoder(m_cameraId),
+												vconf.getPublishBatchSize(), vconf.getPublishLinger());
 			do {
 				agent.run();
 			} while ( m_loop );
@@ -3,37 +3,196 @@ package dric.camera;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
-import utils.jdbc.JdbcProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+import dric.video.JdbcConnectionPool;
+import utils.Utilities;
 
 /**
- * 
+ * 카메라 프레임을 'camera_frames' 테이블에 추가하는 세션을 정의한다.
+ * <p>
+ * 추가 요청된 프레임들은 큐에 저장되고, 별도의 쓰레드에서 일정 갯수 또는 일정 시간 단위로
+ * 모아서 하나의 트랜잭션으로 batch insert된다. 큐가 가득 찬 경우에는
+ * {@link #append(String, byte[], long)} 호출이 대기하게 되어 호출자에게 back-pressure를 전달한다.
+ *
  * @author Kang-Woo Lee (ETRI)
  */
 public class FrameAppendSession implements AutoCloseable {
+	private static final Logger s_logger = LoggerFactory.getLogger(FrameAppendSession.class);
+
+	private static final String INSERT_SQL = "INSERT INTO camera_frames values (?,?,?)";
+	private static final int DEF_BATCH_SIZE = 32;
+	private static final long DEF_FLUSH_INTERVAL = 1000;
+	private static final int DEF_QUEUE_LENGTH = 256;
+
 	private final Connection m_conn;
 	private final PreparedStatement m_pstmt;
-	
-	private static final String INSERT_SQL = "INSERT INTO camera_frames values (?,?,?)";
-	
-	FrameAppendSession(JdbcProcessor jdbc) throws SQLException {
-		m_conn = jdbc.connect();
-		m_conn.setAutoCommit(true);
-		
+	private final int m_batchSize;
+	private final long m_flushInterval;
+	private final BlockingQueue<Frame> m_queue;
+	private final Thread m_flusher;
+
+	private volatile boolean m_closed = false;
+	private volatile SQLException m_error = null;
+	private long m_flushCount = 0;
+	private long m_frameCount = 0;
+
+	FrameAppendSession(JdbcConnectionPool jdbcPool) throws SQLException {
+		this(jdbcPool, DEF_BATCH_SIZE, DEF_FLUSH_INTERVAL, DEF_QUEUE_LENGTH);
+	}
+
+	/**
+	 * 프레임 추가 세션을 생성한다.
+	 *
+	 * @param jdbcPool	JDBC 연결 pool. 세션은 pool의 연결 대신 전용 연결을 생성하여 사용한다.
+	 * @param batchSize	한번에 insert할 최대 프레임 수
+	 * @param flushInterval	batch가 채워지지 않은 경우라도 insert를 수행할 최대 대기 시간 (ms)
+	 * @param queueLength	insert를 대기할 수 있는 최대 프레임 수
+	 */
+	FrameAppendSession(JdbcConnectionPool jdbcPool, int batchSize, long flushInterval, int queueLength)
+		throws SQLException {
+		Utilities.checkArgument(batchSize > 0, "invalid batch size: " + batchSize);
+		Utilities.checkArgument(flushInterval > 0, "invalid flush interval: " + flushInterval);
+		Utilities.checkArgument(queueLength >= batchSize, "queue length is smaller than batch size: "
+															+ queueLength);
+
+		m_batchSize = batchSize;
+		m_flushInterval = flushInterval;
+		m_queue = new ArrayBlockingQueue<>(queueLength);
+
+		// 세션이 살아있는 동안 연결을 계속 사용하므로 pool의 연결을 점유하지 않도록 별도의 연결을 사용한다.
+		m_conn = jdbcPool.getJdbcProcessor().connect();
+		m_conn.setAutoCommit(false);
 		m_pstmt = m_conn.prepareStatement(INSERT_SQL);
+
+		m_flusher = new Thread(this::runFlusher, "dric-frame-append");
+		m_flusher.setDaemon(true);
+		m_flusher.start();
 	}
 
 	@Override
 	public void close() throws SQLException {
-		m_pstmt.close();
-		m_conn.close();
+		m_closed = true;
+		try {
+			m_flusher.join();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			m_pstmt.close();
+			m_conn.close();
+		}
+
+		if ( s_logger.isInfoEnabled() ) {
+			s_logger.info("closed: frames={}, flushes={}", m_frameCount, m_flushCount);
+		}
 	}
-	
+
+	/**
+	 * 주어진 프레임의 추가를 요청한다.
+	 * <p>
+	 * 대기 중인 프레임이 너무 많은 경우에는 큐에 여유가 생길 때까지 대기한다.
+	 *
+	 * @return	요청이 접수된 경우는 {@code true}, 대기 중 인터럽트된 경우는 {@code false}.
+	 * @throws SQLException	이전에 요청된 프레임들을 insert하는 과정에서 오류가 발생한 경우.
+	 */
 	public boolean append(String cctvId, byte[] image, long ts) throws SQLException {
-		m_pstmt.setString(1, cctvId);
-		m_pstmt.setLong(2, ts);
-		m_pstmt.setBytes(3, image);
-		
-		return m_pstmt.executeUpdate() == 1;
+		SQLException error = m_error;
+		if ( error != null ) {
+			m_error = null;
+			throw error;
+		}
+		if ( m_closed ) {
+			throw new IllegalStateException("closed: " + this);
+		}
+
+		try {
+			m_queue.put(new Frame(cctvId, image, ts));
+			return true;
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("FrameAppendSession[batch=%d, interval=%dms, pending=%d]",
+							m_batchSize, m_flushInterval, m_queue.size());
+	}
+
+	private void runFlusher() {
+		List<Frame> batch = Lists.newArrayListWithCapacity(m_batchSize);
+		try {
+			while ( !m_closed || !m_queue.isEmpty() ) {
+				long due = System.currentTimeMillis() + m_flushInterval;
+				while ( batch.size() < m_batchSize ) {
+					long remains = due - System.currentTimeMillis();
+					Frame frame = (remains > 0) ? m_queue.poll(remains, TimeUnit.MILLISECONDS) : null;
+					if ( frame == null ) {
+						break;
+					}
+					batch.add(frame);
+				}
+
+				if ( batch.size() > 0 ) {
+					flush(batch);
+					batch.clear();
+				}
+			}
+		}
+		catch ( InterruptedException e ) {
+			if ( batch.size() > 0 ) {
+				flush(batch);
+			}
+		}
+	}
+
+	private void flush(List<Frame> batch) {
+		try {
+			for ( Frame frame: batch ) {
+				m_pstmt.setString(1, frame.m_cameraId);
+				m_pstmt.setLong(2, frame.m_ts);
+				m_pstmt.setBytes(3, frame.m_image);
+				m_pstmt.addBatch();
+			}
+			m_pstmt.executeBatch();
+			m_conn.commit();
+
+			++m_flushCount;
+			m_frameCount += batch.size();
+		}
+		catch ( SQLException e ) {
+			s_logger.warn("fails to insert frames: count={}, cause={}", batch.size(), e.toString());
+			try {
+				m_pstmt.clearBatch();
+				m_conn.rollback();
+			}
+			catch ( SQLException ignored ) { }
+
+			m_error = e;
+		}
+	}
+
+	private static final class Frame {
+		private final String m_cameraId;
+		private final byte[] m_image;
+		private final long m_ts;
+
+		Frame(String cameraId, byte[] image, long ts) {
+			m_cameraId = cameraId;
+			m_image = image;
+			m_ts = ts;
+		}
 	}
 }
@@ -0,0 +1,198 @@
+package dric.camera;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import utils.Utilities;
+import utils.func.CheckedConsumerX;
+
+/**
+ * 프레임 처리 파이프라인의 한 단계를 정의한다.
+ * <p>
+ * 입력된 프레임은 크기가 제한된 큐에 저장되고, 주어진 {@link Executor}를 통해
+ * 순서대로 하나씩 처리된다. 큐가 가득 찬 경우에는 {@link OverflowPolicy}에 따라
+ * 프레임을 버리기 때문에 {@link #offer(Object)}를 호출하는 쪽은 대기하지 않는다.
+ * 단, {@link OverflowPolicy#BLOCK}인 경우는 큐에 빈 공간이 생길 때까지 대기한다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+class FrameStage<T> implements AutoCloseable {
+	private static final Logger s_logger = LoggerFactory.getLogger(FrameStage.class);
+	
+	private final String m_name;
+	private final Executor m_executor;
+	private final int m_capacity;
+	private final OverflowPolicy m_policy;
+	private final CheckedConsumerX<T,Exception> m_handler;
+	private final Consumer<T> m_discarder;
+	
+	private final ArrayDeque<T> m_queue;
+	private boolean m_scheduled = false;
+	private boolean m_closed = false;
+	private long m_dropCount = 0;
+	private long m_delayCount = 0;		// BLOCK 정책에서 큐가 비기를 기다린 프레임 수
+	
+	FrameStage(String name, Executor executor, int capacity, OverflowPolicy policy,
+				CheckedConsumerX<T,Exception> handler, Consumer<T> discarder) {
+		Utilities.checkNotNullArgument(executor);
+		Utilities.checkArgument(capacity > 0, "invalid queue capacity: " + capacity);
+		
+		m_name = name;
+		m_executor = executor;
+		m_capacity = capacity;
+		m_policy = policy;
+		m_handler = handler;
+		m_discarder = discarder;
+		m_queue = new ArrayDeque<>(capacity);
+	}
+	
+	String getName() {
+		return m_name;
+	}
+	
+	synchronized long getDropCount() {
+		return m_dropCount;
+	}
+	
+	synchronized long getDelayCount() {
+		return m_delayCount;
+	}
+	
+	/**
+	 * 주어진 프레임을 처리 큐에 추가한다.
+	 *
+	 * @param item	처리할 프레임
+	 * @return	프레임이 큐에 추가된 경우는 {@code true}, 버려진 경우는 {@code false}.
+	 */
+	boolean offer(T item) {
+		T dropped = null;
+		boolean schedule = false;
+		synchronized ( this ) {
+			if ( m_closed ) {
+				dropped = item;
+			}
+			else {
+				if ( m_policy == OverflowPolicy.BLOCK && m_queue.size() >= m_capacity ) {
+					++m_delayCount;
+					try {
+						while ( !m_closed && m_queue.size() >= m_capacity ) {
+							wait();
+						}
+					}
+					catch ( InterruptedException e ) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				
+				if ( m_closed || m_queue.size() >= m_capacity ) {
+					switch ( m_policy ) {
+						case DROP_NEWEST:
+						case BLOCK:		// 대기 중 close되었거나 interrupt된 경우
+							dropped = item;
+							break;
+						case DROP_OLDEST:
+							dropped = m_queue.poll();
+							break;
+					}
+					++m_dropCount;
+				}
+				if ( dropped != item ) {
+					m_queue.add(item);
+					if ( !m_scheduled ) {
+						m_scheduled = schedule = true;
+					}
+				}
+			}
+		}
+		
+		if ( dropped != null ) {
+			m_discarder.accept(dropped);
+		}
+		if ( schedule ) {
+			schedule();
+		}
+		
+		return dropped != item;
+	}
+	
+	@Override
+	public void close() throws InterruptedException {
+		synchronized ( this ) {
+			m_closed = true;
+			notifyAll();	// BLOCK 정책으로 대기 중인 쓰레드를 깨운다.
+			while ( m_scheduled ) {
+				wait();
+			}
+		}
+		
+		if ( (m_dropCount > 0 || m_delayCount > 0) && s_logger.isInfoEnabled() ) {
+			s_logger.info("closed: stage={}, dropped={}, delayed={}", m_name, m_dropCount, m_delayCount);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("FrameStage[%s, policy=%s, capacity=%d]", m_name, m_policy, m_capacity);
+	}
+	
+	private void schedule() {
+		try {
+			m_executor.execute(this::drain);
+		}
+		catch ( RejectedExecutionException e ) {
+			s_logger.warn("executor rejected: stage={}", m_name);
+			discardAll();
+		}
+	}
+	
+	private void drain() {
+		// 다른 단계와 executor를 공유하는 경우를 고려하여 한번에 최대 m_capacity개만 처리한다.
+		for ( int i = 0; i < m_capacity; ++i ) {
+			T item;
+			synchronized ( this ) {
+				item = m_queue.poll();
+				if ( item == null ) {
+					m_scheduled = false;
+					notifyAll();
+					
+					return;
+				}
+				if ( m_policy == OverflowPolicy.BLOCK ) {
+					// 큐가 비기를 기다리는 쓰레드를 깨운다.
+					notifyAll();
+				}
+			}
+			
+			try {
+				m_handler.accept(item);
+			}
+			catch ( Throwable e ) {
+				s_logger.warn("fails to process a frame: stage={}, cause={}", m_name, e.toString());
+			}
+		}
+		
+		schedule();
+	}
+	
+	private void discardAll() {
+		while ( true ) {
+			T item;
+			synchronized ( this ) {
+				item = m_queue.poll();
+				if ( item == null ) {
+					m_scheduled = false;
+					notifyAll();
+					
+					return;
+				}
+				++m_dropCount;
+			}
+			m_discarder.accept(item);
+		}
+	}
+}
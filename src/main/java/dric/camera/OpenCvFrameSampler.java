@@ -2,6 +2,9 @@ package dric.camera;
 
 import org.opencv.core.Mat;
 import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import utils.Utilities;
 import utils.func.FOption;
@@ -13,43 +16,119 @@ import utils.stream.FStreams.AbstractFStream;
  * @author Kang-Woo Lee (ETRI)
  */
 public class OpenCvFrameSampler extends AbstractFStream<Tuple<Mat,Long>> {
+	private static final Logger s_logger = LoggerFactory.getLogger(OpenCvFrameSampler.class);
+	// 스트림 시각과 시스템 시각의 차이가 이 값보다 커지면 스트림 시각의 기준점을 다시 설정한다.
+	private static final long MAX_CLOCK_DRIFT = 2 * 1000;
+	
+	/**
+	 * 프레임 샘플링 방식.
+	 */
+	public enum Mode {
+		/**
+		 * 모든 프레임을 디코딩하고, 프레임 읽기가 끝난 시스템 시각을 캡쳐 시각으로 사용한다.
+		 */
+		READ,
+		/**
+		 * 샘플링 대상이 아닌 프레임은 디코딩하지 않고 건너뛰며({@link VideoCapture#grab()}),
+		 * 스트림의 프레임 시각({@link Videoio#CAP_PROP_POS_MSEC})을 시스템 시각에 맞추어 캡쳐 시각으로 사용한다.
+		 */
+		GRAB,
+	}
+	
 	private final VideoCapture m_camera;
+	private final Mode m_mode;
 	private long m_due = -1;
 	private long m_interval;
 	
 	private final Mat m_frame = new Mat();
+	private long m_clockBase = -1;	// 스트림 시각 0에 해당하는 시스템 시각 (GRAB 모드)
+	private long m_lastTs = -1;
 	
 	OpenCvFrameSampler(VideoCapture camera, long interval) {
+		this(camera, interval, Mode.READ);
+	}
+	
+	OpenCvFrameSampler(VideoCapture camera, long interval, Mode mode) {
 		Utilities.checkNotNullArgument(camera);
 		Utilities.checkArgument(interval > 0, "invalid sample interval: " + interval);
+		Utilities.checkNotNullArgument(mode);
 		
 		m_camera = camera;
 		m_interval = interval;
+		m_mode = mode;
 	}
-
+	
 	@Override
 	protected void closeInGuard() throws Exception {
 		m_camera.release();
 	}
-
+	
 	@Override
 	public FOption<Tuple<Mat,Long>> next() {
+		return (m_mode == Mode.GRAB) ? grabNext() : readNext();
+	}
+	
+	private FOption<Tuple<Mat,Long>> readNext() {
 		while ( m_camera.isOpened() ) {
 			if ( !m_camera.read(m_frame) ) {
 				throw new IllegalArgumentException("fails to capture a frame from camera: " + m_camera);
 			}
 			
 			long ts = System.currentTimeMillis();
-//			System.out.printf("gap=%d%n", m_due-ts);
 			if ( ts >= (m_due-20) ) {
 				m_due = ts + m_interval;
 				return FOption.of(Tuple.of(m_frame, ts));
 			}
-//			else {
-//				System.out.println("SKIP!!!");
-//			}
 		}
 		
 		return FOption.empty();
 	}
+	
+	private FOption<Tuple<Mat,Long>> grabNext() {
+		while ( m_camera.isOpened() ) {
+			if ( !m_camera.grab() ) {
+				throw new IllegalArgumentException("fails to capture a frame from camera: " + m_camera);
+			}
+			
+			long ts = getFrameTimestamp();
+			if ( ts >= (m_due-20) ) {
+				// 샘플링 대상 프레임만 디코딩한다.
+				if ( !m_camera.retrieve(m_frame) ) {
+					throw new IllegalArgumentException("fails to decode a frame from camera: " + m_camera);
+				}
+				m_due = ts + m_interval;
+				return FOption.of(Tuple.of(m_frame, ts));
+			}
+		}
+		
+		return FOption.empty();
+	}
+	
+	private long getFrameTimestamp() {
+		long now = System.currentTimeMillis();
+		double posMsec = m_camera.get(Videoio.CAP_PROP_POS_MSEC);
+		if ( Double.isNaN(posMsec) || posMsec <= 0 ) {
+			// 스트림 시각을 제공하지 않는 경우는 시스템 시각을 사용한다.
+			return advance(now);
+		}
+		
+		long streamTs = Math.round(posMsec);
+		long ts = m_clockBase + streamTs;
+		if ( m_clockBase < 0 || Math.abs(now - ts) > MAX_CLOCK_DRIFT ) {
+			// 첫 프레임이거나 스트림 시각이 재설정된 경우(재연결 등)는 현재 시스템 시각을 기준으로 한다.
+			if ( m_clockBase >= 0 && s_logger.isInfoEnabled() ) {
+				s_logger.info("re-anchor stream clock: drift={}ms, camera={}", now - ts, m_camera);
+			}
+			m_clockBase = now - streamTs;
+			ts = now;
+		}
+		
+		return advance(ts);
+	}
+	
+	private long advance(long ts) {
+		// 캡쳐 시각은 항상 증가하도록 한다.
+		m_lastTs = Math.max(ts, m_lastTs + 1);
+		return m_lastTs;
+	}
 }
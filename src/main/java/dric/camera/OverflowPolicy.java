@@ -0,0 +1,14 @@
+package dric.camera;
+
+/**
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public enum OverflowPolicy {
+	/** 큐가 가득 찬 경우 가장 오래된 프레임을 버리고 새 프레임을 추가한다. */
+	DROP_OLDEST,
+	/** 큐가 가득 찬 경우 새로 도착한 프레임을 버린다. */
+	DROP_NEWEST,
+	/** 큐가 가득 찬 경우 빈 공간이 생길 때까지 프레임을 추가하는 쓰레드를 대기시킨다. */
+	BLOCK;
+}
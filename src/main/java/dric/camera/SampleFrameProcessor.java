@@ -1,24 +1,29 @@
 package dric.camera;
 
 import java.io.File;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.videoio.VideoWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import dric.type.CameraFrame;
+import dric.video.FrameLog;
+import dric.video.VideoFrameIndex;
 import marmot.dataset.DataSet;
-import marmot.stream.PipedRecordStream;
+import opencvj.JpegEncoder;
+import opencvj.MatPool;
+import opencvj.OrderedJpegEncoder;
 import utils.func.CheckedConsumerX;
 import utils.func.Tuple;
-import utils.jdbc.JdbcProcessor;
 
 /**
  * 
@@ -27,6 +32,8 @@ import utils.jdbc.JdbcProcessor;
 class SampleFrameProcessor implements CheckedConsumerX<Tuple<Mat,Long>, SQLException>,
 												AutoCloseable {
 	private static final Logger s_logger = LoggerFactory.getLogger(SampleFrameProcessor.class);
+	private static final int WRITE_QUEUE_LENGTH = 16;
+	private static final int MAX_ENCODING_FRAMES = 8;
 	
 	private final DrICCameraAgent m_agent;
 	private final boolean m_noVideo;
@@ -34,90 +41,296 @@ class SampleFrameProcessor implements CheckedConsumerX<Tuple<Mat,Long>, SQLExcep
 	private final long m_videoInterval;
 	private long m_startTs = -1;
 	private long m_lastTs;
-	private final MatOfByte m_mob = new MatOfByte();
-//	private final FrameAppendSession m_appender;
+	private final FrameAppendSession m_appender;	// tail 프레임을 테이블에 저장하지 않는 경우는 null
+	private final FrameLog.Writer m_frameLog;		// tail 프레임을 프레임 로그에 저장하지 않는 경우는 null
 	
-	private PipedRecordStream m_pipe;
 	private File m_videoFile;
 	private VideoWriter m_writer;
-	private int m_appendCount = 0;
+	private VideoFrameIndex.Writer m_frameIndex;
+	// 세그먼트 마무리와 다음 세그먼트의 writer 생성은 write 쓰레드 밖에서 수행된다.
+	private final SegmentFinalizer m_finalizer;
+	private CompletableFuture<Tuple<File,VideoWriter>> m_nextWriter;
+	
+	// capture -> (video-write, encode -> publish)
+	private final MatPool m_framePool;
+	private final ExecutorService m_writeExecutor;
+	private final ExecutorService m_encodeExecutor;		// 공유 worker를 사용하는 경우는 null
+	private final ExecutorService m_deliverExecutor;	// 공유 worker를 사용하지 않는 경우는 null
+	private final ExecutorService m_publishExecutor;
+	private final BatchedFramePublisher m_publisher;
+	private final long m_publishDelayThreshold;
+	private long m_publishCount = 0;		// publish 쓰레드에서만 접근된다.
+	private long m_publishDelayCount = 0;	// publish 쓰레드에서만 접근된다.
+	private final FrameStage<CapturedFrame> m_writeStage;
+	private final OrderedJpegEncoder<CapturedFrame> m_encoder;
+	private final OrderedJpegEncoder<CapturedFrame> m_tailEncoder;	// 전송용 인코딩 결과를 저장하는 경우는 null
+	private final FrameStage<CameraFrame> m_publishStage;
 	
-	SampleFrameProcessor(DrICCameraAgent agent, boolean noVideo) throws SQLException {
+	SampleFrameProcessor(DrICCameraAgent agent, boolean noVideo) throws SQLException, IOException {
 		m_agent = agent;
 		m_noVideo = noVideo;
+		
+		// 동시에 사용될 수 있는 최대 슬롯 수: 쓰기 큐에 대기 중이거나 기록 중인 프레임,
+		// 인코딩 중인 프레임, 그리고 캡쳐 쓰레드에서 복사 중인 프레임.
+		// 슬롯은 필요할 때만 할당되므로 실제 메모리 사용량은 동시에 사용된 슬롯 수에 비례한다.
+		int poolSize = (noVideo ? 0 : WRITE_QUEUE_LENGTH + 1) + MAX_ENCODING_FRAMES + 1;
+		m_framePool = new MatPool(poolSize);
 		m_topic = agent.getCameraFrameTopic();
 		m_videoInterval = agent.getVideoTailInterval();
-//		m_appender = new FrameAppendSession(m_agent.getJdbcProcessor());
+		VideoConfig vconf = agent.getVideoConfig();
+		if ( vconf.getStoreTailFrames() && vconf.getTailLogDir() != null ) {
+			m_appender = null;
+			m_frameLog = new FrameLog.Writer(vconf.getTailLogDir(), agent.getCameraId(), m_videoInterval,
+											vconf.getTailLogRetention());
+		}
+		else if ( vconf.getStoreTailFrames() ) {
+			int batchSize = vconf.getTailBatchSize();
+			m_appender = new FrameAppendSession(m_agent.getConnectionPool(), batchSize,
+												vconf.getTailFlushInterval(), batchSize * 8);
+			m_frameLog = null;
+		}
+		else {
+			m_appender = null;
+			m_frameLog = null;
+		}
+		
+		m_finalizer = new SegmentFinalizer(agent);
+		
+		String camId = agent.getCameraId();
+		
+		// topic 기록은 전송 단계 쓰레드에서 수행되며, 설정에 따라 여러 프레임을 묶어 기록한다.
+		m_publisher = new BatchedFramePublisher(camId, m_topic, vconf.getPublishBatchSize(),
+												vconf.getPublishLinger());
 		
-		m_pipe = new PipedRecordStream(m_topic.getRecordSchema(), 16);
-		CompletableFuture.runAsync(() -> m_topic.write(m_pipe));
+		m_writeExecutor = newStageExecutor("write", camId);
+		
+		// 여러 카메라가 worker를 공유하는 경우에도 비디오 파일 쓰기는 카메라별 쓰레드를 사용한다.
+		Executor workers = agent.getWorkerExecutor();
+		int nencoders = agent.getVideoConfig().getEncodeThreadCount();
+		m_encodeExecutor = (workers == null) ? newStageExecutor("encode", camId, nencoders) : null;
+		// 인코딩 결과 전달(전송 큐 추가, tail 프레임 저장)은 대기할 수 있으므로, 공유 worker를
+		// 사용하는 경우는 결과 전달을 카메라별 쓰레드에서 수행하여 다른 카메라의 인코딩을 막지 않는다.
+		m_deliverExecutor = (workers != null) ? newStageExecutor("deliver", camId) : null;
+		// 전송 단계는 topic 기록이 지연되면 대기하므로 공유 worker를 점유하지 않도록 별도 쓰레드를 사용한다.
+		m_publishExecutor = newStageExecutor("publish", camId);
+		m_publishDelayThreshold = Math.round(1000.0 / vconf.getFps());
+		
+		m_writeStage = new FrameStage<>("write:" + camId, m_writeExecutor, WRITE_QUEUE_LENGTH,
+										OverflowPolicy.DROP_NEWEST, this::writeFrame, CapturedFrame::release);
+		// topic 전송용 출력 프로파일이 tail 프레임 설정과 다른 경우에는 tail 프레임을 별도로 인코딩한다.
+		JpegEncoder publishEncoder = vconf.getPublishEncoder(camId);
+		boolean storeTail = m_appender != null || m_frameLog != null;
+		m_encoder = new OrderedJpegEncoder<>(publishEncoder, (workers != null) ? workers : m_encodeExecutor,
+											m_deliverExecutor, MAX_ENCODING_FRAMES, this::onFrameEncoded);
+		m_tailEncoder = (storeTail && !publishEncoder.hasSameSettings(vconf.getJpegEncoder()))
+						? new OrderedJpegEncoder<>(vconf.getJpegEncoder(),
+												(workers != null) ? workers : m_encodeExecutor,
+												m_deliverExecutor, MAX_ENCODING_FRAMES, this::onTailFrameEncoded)
+						: null;
+		if ( s_logger.isInfoEnabled() ) {
+			s_logger.info("camera output: camera={}, publish={}, tail={}", camId, publishEncoder,
+							(storeTail) ? vconf.getJpegEncoder() : "none");
+		}
+		// 'BLOCK' 정책인 경우에도 인코딩 결과 전달 쓰레드(카메라별 인코딩 또는 전달 쓰레드)만
+		// 대기하고, 캡쳐 쓰레드는 인코딩 단계에서 프레임을 버리기 때문에 대기하지 않는다.
+		m_publishStage = new FrameStage<>("publish:" + camId, m_publishExecutor, vconf.getPublishQueueLength(),
+										vconf.getPublishOverflowPolicy(), this::publishFrame, frame -> { });
 	}
-
+	
 	@Override
 	public void close() throws Exception {
-		m_pipe.endOfSupply();
-//		m_appender.close();
-		m_writer.release();
+		try {
+			m_writeStage.close();
+			m_encoder.close();
+			if ( m_tailEncoder != null ) {
+				m_tailEncoder.close();
+			}
+			m_publishStage.close();
+			
+			if ( s_logger.isInfoEnabled() ) {
+				s_logger.info("publish stats: camera={}, published={}, dropped={}, delayed={}",
+								m_agent.getCameraId(), m_publishCount, m_publishStage.getDropCount(),
+								m_publishStage.getDelayCount() + m_publishDelayCount);
+			}
+		}
+		finally {
+			m_publisher.close();
+			if ( m_appender != null ) {
+				m_appender.close();
+			}
+			if ( m_frameLog != null ) {
+				m_frameLog.close();
+			}
+			if ( m_writer != null ) {
+				m_writer.release();
+				m_frameIndex.close();
+			}
+			if ( m_nextWriter != null ) {
+				m_nextWriter.thenAccept(SegmentFinalizer::discard);
+			}
+			m_finalizer.close();
+			m_framePool.close();
+			
+			m_writeExecutor.shutdown();
+			if ( m_encodeExecutor != null ) {
+				m_encodeExecutor.shutdown();
+			}
+			if ( m_deliverExecutor != null ) {
+				m_deliverExecutor.shutdown();
+			}
+			m_publishExecutor.shutdown();
+		}
 	}
 	
 	private void createVideoWriter(long startTs) {
-		Tuple<File, VideoWriter> t = m_agent.createVideoWriter(m_startTs, m_agent.getFps());
+		Tuple<File, VideoWriter> t = takeNextWriter(startTs);
 		m_videoFile = t._1;
 		m_writer = t._2;
+		m_frameIndex = new VideoFrameIndex.Writer(m_videoFile, m_agent.getVideoConfig().isIntraOnlyCodec());
 		
 		m_startTs = startTs;
-		m_appendCount = 0;
+		
+		// 세그먼트 전환시 파일 생성으로 기록이 지연되지 않도록 다음 세그먼트의 writer를 미리 생성한다.
+		m_nextWriter = m_finalizer.prepare(startTs + m_videoInterval + 1);
 	}
 	
-	@Override
-	public void accept(Tuple<Mat,Long> sample) throws SQLException {
-		long ts = sample._2;
-		if ( m_startTs < 0 ) {
-			m_startTs = ts;
+	private Tuple<File, VideoWriter> takeNextWriter(long startTs) {
+		CompletableFuture<Tuple<File,VideoWriter>> next = m_nextWriter;
+		m_nextWriter = null;
+		
+		if ( next != null ) {
+			if ( next.isDone() && !next.isCompletedExceptionally() ) {
+				return next.join();
+			}
 			
-			if ( !m_noVideo ) {
-				createVideoWriter(ts);
+			// 미리 생성 중인 writer가 준비되지 않은 경우는 기다리지 않고 새로 생성한다.
+			next.thenAccept(SegmentFinalizer::discard);
+		}
+		return m_agent.createVideoWriter(startTs, m_agent.getFps());
+	}
+	
+	/**
+	 * 카메라에서 샘플링된 프레임을 파이프라인에 전달한다.
+	 * <p>
+	 * 본 메소드는 캡쳐 쓰레드에서 호출되기 때문에 하위 단계의 처리를 기다리지 않는다.
+	 */
+	@Override
+	public void accept(Tuple<Mat,Long> sample) {
+		// sampler는 매번 동일한 Mat 객체를 반환하기 때문에 비동기 처리를 위해
+		// pool에서 할당받은 슬롯에 복사한다.
+		Mat image = sample._1;
+		MatPool.Slot slot = m_framePool.lease(image.size(), image.type());
+		if ( slot == null ) {
+			// 모든 슬롯이 하위 단계에서 사용 중이므로 현 프레임을 버린다.
+			if ( s_logger.isDebugEnabled() ) {
+				s_logger.debug("frame pool exhausted, drop frame: camera={}, ts={}",
+								m_agent.getCameraId(), sample._2);
 			}
+			return;
 		}
+		image.copyTo(slot.mat());
 		
-		long elapsed = ts - m_startTs;
+		CapturedFrame captured = new CapturedFrame(slot, sample._2);
 		if ( !m_noVideo ) {
-			if ( elapsed > m_videoInterval ) {
-				m_writer.release();
-				insertVideo(m_videoFile, m_startTs, m_lastTs);
-				if ( s_logger.isInfoEnabled() ) {
-					double fps = m_appendCount / ((m_lastTs - m_startTs + 1) / 1000.0);
-					s_logger.info(String.format("actual fps=%.1f", fps));
-				}
-				
+			slot.retain();
+			m_writeStage.offer(captured);
+		}
+		if ( m_tailEncoder != null ) {
+			slot.retain();
+			if ( !m_tailEncoder.submit(captured.image(), captured) ) {
+				captured.release();
+			}
+		}
+		if ( !m_encoder.submit(captured.image(), captured) ) {
+			// 인코딩 중인 프레임이 너무 많으면 현 프레임의 전송을 생략한다.
+			captured.release();
+		}
+	}
+	
+	private void writeFrame(CapturedFrame captured) {
+		try {
+			long ts = captured.ts();
+			if ( m_writer == null ) {
+				createVideoWriter(ts);
+			}
+			else if ( ts - m_startTs > m_videoInterval ) {
+				m_finalizer.submit(m_videoFile, m_writer, m_frameIndex, m_startTs, m_lastTs);
 				createVideoWriter(ts);
 			}
-			m_writer.write(sample._1);
+			
+			// 색인에 먼저 추가하여, 색인이 거부한 프레임(시각 역행 등)은 비디오에도 기록하지 않는다.
+			try {
+				m_frameIndex.append(ts);
+			}
+			catch ( IllegalArgumentException e ) {
+				s_logger.warn("skip a video frame: camera={}, cause={}", m_agent.getCameraId(), e.toString());
+				return;
+			}
+			m_writer.write(captured.image());
+			
+			m_lastTs = ts;
+		}
+		finally {
+			captured.release();
+		}
+	}
+	
+	private void onFrameEncoded(CapturedFrame captured, byte[] jpegBytes) {
+		if ( jpegBytes != null ) {
+			m_publishStage.offer(new CameraFrame(m_agent.getCameraId(), jpegBytes, captured.ts()));
 		}
 		
-		Imgcodecs.imencode(".jpg", sample._1, m_mob);
-		byte[] jpegBytes = m_mob.toArray();
-		
-		CameraFrame frame = new CameraFrame(m_agent.getCameraId(), jpegBytes, ts);
-		m_pipe.supply(frame.toRecord());
-		
-//		m_appender.append(m_agent.getCameraId(), m_mob.toArray(), sample._2);
-		m_lastTs = ts;
-		++m_appendCount;
+		if ( m_tailEncoder == null ) {
+			onTailFrameEncoded(captured, jpegBytes);
+		}
+		else {
+			captured.release();
+		}
 	}
 	
-	private void insertVideo(File file, long start, long stop) throws SQLException {
-		String sql = "insert into camera_videos(camera_id, start_ts, stop_ts, file_path) "
-					+ "values (?, ?, ?, ?)";
-		JdbcProcessor jdbc = m_agent.getJdbcProcessor();
-		try ( Connection conn = jdbc.connect(); ) {
-			PreparedStatement pstmt = conn.prepareStatement(sql);
-			pstmt.setString(1, m_agent.getCameraId());
-			pstmt.setLong(2, start);
-			pstmt.setLong(3, stop);
-			pstmt.setString(4, file.getAbsolutePath());
-			
-			pstmt.executeUpdate();
+	private void onTailFrameEncoded(CapturedFrame captured, byte[] jpegBytes) {
+		try {
+			if ( jpegBytes != null ) {
+				if ( m_appender != null ) {
+					// 저장이 지연되는 경우에는 (카메라별 쓰레드에서 수행되는) 인코딩 결과 전달이
+					// 지연되고, 그에 따라 캡쳐된 프레임들이 인코딩 단계에서 버려진다.
+					m_appender.append(m_agent.getCameraId(), jpegBytes, captured.ts());
+				}
+				if ( m_frameLog != null ) {
+					m_frameLog.append(captured.ts(), jpegBytes);
+				}
+			}
+		}
+		catch ( SQLException | IOException e ) {
+			s_logger.warn("fails to store tail frames: camera={}, cause={}", m_agent.getCameraId(), e.toString());
 		}
+		finally {
+			captured.release();
+		}
+	}
+	
+	private void publishFrame(CameraFrame frame) {
+		long started = System.currentTimeMillis();
+		m_publisher.publish(frame);
+		++m_publishCount;
+		
+		// topic 기록이 밀려 한 프레임 간격 이상 대기한 경우를 지연으로 간주한다.
+		if ( System.currentTimeMillis() - started > m_publishDelayThreshold ) {
+			++m_publishDelayCount;
+		}
+	}
+	
+	private static ExecutorService newStageExecutor(String stage, String cameraId) {
+		return Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+														.setNameFormat("dric-" + stage + "-" + cameraId)
+														.setDaemon(true)
+														.build());
+	}
+	
+	private static ExecutorService newStageExecutor(String stage, String cameraId, int nthreads) {
+		return Executors.newFixedThreadPool(nthreads, new ThreadFactoryBuilder()
+														.setNameFormat("dric-" + stage + "-" + cameraId + "-%d")
+														.setDaemon(true)
+														.build());
 	}
 }
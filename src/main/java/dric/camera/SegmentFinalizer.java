@@ -0,0 +1,250 @@
+package dric.camera;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.videoio.VideoWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import dric.video.VideoFrameIndex;
+import utils.func.Try;
+import utils.func.Tuple;
+
+/**
+ * 기록이 끝난 비디오 세그먼트의 마무리 작업을 캡쳐 경로와 별도의 쓰레드에서 수행한다.
+ * <p>
+ * 세그먼트 마무리는 {@link VideoWriter}의 release(컨테이너 flush), 프레임 색인 저장,
+ * 그리고 'camera_videos' 테이블 등록으로 구성된다. 테이블 등록에 실패한 세그먼트는
+ * 재시도 큐에 넣어 등록될 때까지 {@link #RETRY_DELAY} 간격으로 순서대로 다시 등록하며,
+ * close될 때 큐에 남은 세그먼트들의 등록을 마지막으로 한번 더 시도한다.
+ * 또한 다음 세그먼트의 {@link VideoWriter}를 미리 생성하는 기능도 제공한다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+class SegmentFinalizer implements AutoCloseable {
+	private static final Logger s_logger = LoggerFactory.getLogger(SegmentFinalizer.class);
+	private static final long RETRY_DELAY = 5 * 1000;
+	private static final long CLOSE_TIMEOUT = 30 * 1000;
+	private static final String SQL_STATE_UNIQUE_VIOLATION = "23505";
+	
+	private final DrICCameraAgent m_agent;
+	private final ScheduledThreadPoolExecutor m_executor;
+	private final ArrayDeque<PendingVideo> m_pending = new ArrayDeque<>();	// 등록에 실패한 세그먼트들
+	private boolean m_retryScheduled = false;	// m_pending으로 보호된다.
+	
+	SegmentFinalizer(DrICCameraAgent agent) {
+		m_agent = agent;
+		m_executor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+													.setNameFormat("dric-finalize-" + agent.getCameraId())
+													.setDaemon(true)
+													.build());
+		// 종료시 대기 중인 재시도는 기다리지 않고, close()에서 큐에 남은 세그먼트들을 직접 등록한다.
+		m_executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+	
+	/**
+	 * 주어진 시각에 시작하는 세그먼트의 {@link VideoWriter}를 비동기적으로 생성한다.
+	 *
+	 * @param startTs	세그먼트 시작 (예상) 시각
+	 * @return	생성된 (비디오 파일, VideoWriter) 쌍의 future
+	 */
+	CompletableFuture<Tuple<File,VideoWriter>> prepare(long startTs) {
+		try {
+			return CompletableFuture.supplyAsync(() -> m_agent.createVideoWriter(startTs, m_agent.getFps()),
+												m_executor);
+		}
+		catch ( RejectedExecutionException e ) {
+			CompletableFuture<Tuple<File,VideoWriter>> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+	
+	/**
+	 * 사용되지 않은 (미리 생성된) 비디오 파일을 닫고 삭제한다.
+	 */
+	static void discard(Tuple<File,VideoWriter> prepared) {
+		prepared._2.release();
+		prepared._1.delete();
+	}
+	
+	/**
+	 * 기록이 끝난 세그먼트의 마무리 작업을 요청한다.
+	 * <p>
+	 * 본 메소드는 마무리 작업을 기다리지 않고 바로 반환된다.
+	 *
+	 * @param file	세그먼트 비디오 파일
+	 * @param writer	세그먼트 비디오 writer
+	 * @param index	세그먼트 프레임 색인 writer
+	 * @param startTs	세그먼트 첫번째 프레임 시각
+	 * @param stopTs	세그먼트 마지막 프레임 시각
+	 */
+	void submit(File file, VideoWriter writer, VideoFrameIndex.Writer index, long startTs, long stopTs) {
+		try {
+			m_executor.execute(() -> finalizeSegment(file, writer, index, startTs, stopTs));
+		}
+		catch ( RejectedExecutionException e ) {
+			// 종료 중인 경우는 호출 쓰레드에서 파일만 마무리한다.
+			writer.release();
+			Try.run(index::close);
+			registerOnClose(new PendingVideo(file, startTs, stopTs));
+		}
+	}
+	
+	@Override
+	public void close() throws InterruptedException {
+		m_executor.shutdown();
+		if ( !m_executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS) ) {
+			s_logger.warn("segment finalizer did not terminate in time: camera={}", m_agent.getCameraId());
+			m_executor.shutdownNow();
+		}
+		
+		List<PendingVideo> pendings;
+		synchronized ( m_pending ) {
+			pendings = Lists.newArrayList(m_pending);
+			m_pending.clear();
+		}
+		pendings.forEach(this::registerOnClose);
+	}
+	
+	private void finalizeSegment(File file, VideoWriter writer, VideoFrameIndex.Writer index,
+								long startTs, long stopTs) {
+		int nframes = index.getFrameCount();
+		writer.release();
+		try {
+			index.close();
+		}
+		catch ( Exception e ) {
+			s_logger.warn("fails to write frame index: file={}, cause={}", file, e.toString());
+		}
+		
+		if ( s_logger.isInfoEnabled() ) {
+			double fps = nframes / ((stopTs - startTs + 1) / 1000.0);
+			s_logger.info(String.format("finalized a video file: file=%s, frames=%d, actual fps=%.1f",
+										file, nframes, fps));
+		}
+		
+		// 먼저 실패한 세그먼트들이 있으면 등록 순서를 지키기 위해 큐 뒤에 추가한다.
+		synchronized ( m_pending ) {
+			m_pending.addLast(new PendingVideo(file, startTs, stopTs));
+		}
+		registerPendings();
+	}
+	
+	/**
+	 * 재시도 큐의 세그먼트들을 순서대로 등록한다.
+	 * 등록에 실패하면 나머지 세그먼트들은 큐에 남겨두고 {@link #RETRY_DELAY} 후에 다시 시도한다.
+	 */
+	private void registerPendings() {
+		while ( true ) {
+			PendingVideo video;
+			synchronized ( m_pending ) {
+				video = m_pending.peekFirst();
+				if ( video == null ) {
+					return;
+				}
+			}
+			
+			try {
+				register(video);
+			}
+			catch ( SQLException e ) {
+				++video.m_retries;
+				synchronized ( m_pending ) {
+					s_logger.warn("fails to register video, retry later: file={}, retries={}, pendings={}, "
+									+ "cause={}", video.m_file, video.m_retries, m_pending.size(), e.toString());
+					scheduleRetry();
+				}
+				return;
+			}
+			
+			synchronized ( m_pending ) {
+				m_pending.remove(video);
+			}
+			if ( video.m_retries > 0 && s_logger.isInfoEnabled() ) {
+				s_logger.info("registered video: file={}, retries={}", video.m_file, video.m_retries);
+			}
+		}
+	}
+	
+	private void retryPendings() {
+		synchronized ( m_pending ) {
+			m_retryScheduled = false;
+		}
+		registerPendings();
+	}
+	
+	// m_pending을 획득한 상태에서 호출되어야 한다.
+	private void scheduleRetry() {
+		if ( !m_retryScheduled ) {
+			try {
+				m_executor.schedule(this::retryPendings, RETRY_DELAY, TimeUnit.MILLISECONDS);
+				m_retryScheduled = true;
+			}
+			catch ( RejectedExecutionException ignored ) {
+				// 종료 중인 경우는 close()에서 큐에 남은 세그먼트들을 등록한다.
+			}
+		}
+	}
+	
+	private void registerOnClose(PendingVideo video) {
+		try {
+			register(video);
+		}
+		catch ( SQLException e ) {
+			s_logger.error("finalizer closed, video not registered: file={}, start={}, stop={}, cause={}",
+							video.m_file, video.m_start, video.m_stop, e.toString());
+		}
+	}
+	
+	private void register(PendingVideo video) throws SQLException {
+		try {
+			insertVideo(video.m_file, video.m_start, video.m_stop);
+		}
+		catch ( SQLException e ) {
+			// 이전 시도에서 등록은 되었으나 응답을 받지 못한 경우는 등록된 것으로 간주한다.
+			if ( !SQL_STATE_UNIQUE_VIOLATION.equals(e.getSQLState()) ) {
+				throw e;
+			}
+		}
+	}
+	
+	private void insertVideo(File file, long start, long stop) throws SQLException {
+		String sql = "insert into camera_videos(camera_id, start_ts, stop_ts, file_path) "
+					+ "values (?, ?, ?, ?)";
+		try ( Connection conn = m_agent.getConnectionPool().connect(); ) {
+			PreparedStatement pstmt = conn.prepareStatement(sql);
+			pstmt.setString(1, m_agent.getCameraId());
+			pstmt.setLong(2, start);
+			pstmt.setLong(3, stop);
+			pstmt.setString(4, file.getAbsolutePath());
+			
+			pstmt.executeUpdate();
+		}
+	}
+	
+	private static final class PendingVideo {
+		private final File m_file;
+		private final long m_start;
+		private final long m_stop;
+		private int m_retries = 0;
+		
+		PendingVideo(File file, long start, long stop) {
+			m_file = file;
+			m_start = start;
+			m_stop = stop;
+		}
+	}
+}
@@ -1,11 +1,17 @@
 package dric.camera;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.Map;
 
+import org.opencv.core.Size;
 import org.opencv.videoio.VideoWriter;
 
+import com.google.common.collect.Maps;
+
 import dric.ConfigUtils;
+import dric.video.Configs;
+import opencvj.JpegEncoder;
 
 
 /**
@@ -13,16 +19,50 @@ import dric.ConfigUtils;
  * @author Kang-Woo Lee (ETRI)
  */
 class VideoConfig {
+	private static final long DEF_PUBLISH_LINGER = 100;
+	
 	private final File m_videoDir;
 	private final float m_fps;
 	private final char[] m_fourcc;
 	private final long m_tailInterval;
+	private final JpegEncoder m_jpegEncoder;
+	private final int m_encodeThreadCount;
+	private final boolean m_storeTailFrames;
+	private final int m_tailBatchSize;
+	private final long m_tailFlushInterval;
+	private final File m_tailLogDir;		// tail 프레임을 'camera_frames' 테이블에 저장하는 경우는 null
+	private final long m_tailLogRetention;
+	private final OpenCvFrameSampler.Mode m_sampleMode;
+	// 카메라 식별자 (또는 'default')별 topic 전송용 JPEG 인코더
+	private final Map<String,JpegEncoder> m_publishEncoders;
+	private final int m_publishQueueLength;
+	private final OverflowPolicy m_publishOverflow;
+	private final int m_publishBatchSize;
+	private final long m_publishLinger;
 	
-	private VideoConfig(File videoFolder, float fps, char[] fourcc, long tailInterval) {
+	private VideoConfig(File videoFolder, float fps, char[] fourcc, long tailInterval,
+						JpegEncoder jpegEncoder, int encodeThreadCount,
+						boolean storeTailFrames, int tailBatchSize, long tailFlushInterval,
+						File tailLogDir, long tailLogRetention, OpenCvFrameSampler.Mode sampleMode,
+						Map<String,JpegEncoder> publishEncoders, int publishQueueLength,
+						OverflowPolicy publishOverflow, int publishBatchSize, long publishLinger) {
 		m_videoDir = videoFolder;
 		m_fps = fps;
 		m_fourcc = fourcc;
 		m_tailInterval = tailInterval;
+		m_jpegEncoder = jpegEncoder;
+		m_encodeThreadCount = encodeThreadCount;
+		m_storeTailFrames = storeTailFrames;
+		m_tailBatchSize = tailBatchSize;
+		m_tailFlushInterval = tailFlushInterval;
+		m_tailLogDir = tailLogDir;
+		m_tailLogRetention = tailLogRetention;
+		m_sampleMode = sampleMode;
+		m_publishEncoders = publishEncoders;
+		m_publishQueueLength = publishQueueLength;
+		m_publishOverflow = publishOverflow;
+		m_publishBatchSize = publishBatchSize;
+		m_publishLinger = publishLinger;
 	}
 	
 	static VideoConfig from(Map<String,Object> config) {
@@ -33,8 +73,64 @@ class VideoConfig {
 									.substring(0, 4)
 									.toCharArray();
 		long interval = ConfigUtils.parseDuration(config, "tail_interval");
-				
-		return new VideoConfig(videoDir, fps, fourcc, interval);
+		
+		int quality = Configs.getInt(config, "jpeg_quality", JpegEncoder.DEFAULT_QUALITY);
+		Size maxSize = Configs.getSize(config, "jpeg_max_size");
+		int nthreads = Configs.getInt(config, "encode_threads",
+									Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+		
+		boolean storeTail = Configs.getBoolean(config, "store_tail_frames", false);
+		int tailBatchSize = Configs.getInt(config, "tail_batch_size", 32);
+		long tailFlushInterval = Configs.getDuration(config, "tail_flush_interval", 1000);
+		String tailLogPath = Configs.getString(config, "tail_log_folder", null);
+		File tailLogDir = (tailLogPath != null) ? new File(tailLogPath) : null;
+		long tailLogRetention = Configs.getDuration(config, "tail_log_retention", interval * 2);
+		
+		String modeStr = Configs.getString(config, "sample_mode", "read");
+		OpenCvFrameSampler.Mode sampleMode;
+		try {
+			sampleMode = OpenCvFrameSampler.Mode.valueOf(modeStr.trim().toUpperCase());
+		}
+		catch ( IllegalArgumentException e ) {
+			throw new IllegalArgumentException("invalid video.sample_mode: " + modeStr);
+		}
+		
+		// 카메라별 프로파일은 'default' 프로파일 위에, 'default' 프로파일은 전역 설정 위에 덮어쓴다.
+		Map<String,JpegEncoder> publishEncoders = Maps.newHashMap();
+		Map<String,Object> profiles = Configs.getSubConfigOrEmpty(config, "publish_profiles");
+		JpegEncoder defEncoder = toPublishEncoder(Configs.getSubConfigOrEmpty(profiles, "default"),
+													quality, maxSize);
+		for ( String key: profiles.keySet() ) {
+			JpegEncoder encoder = key.equals("default") ? defEncoder
+								: toPublishEncoder(Configs.getSubConfigOrEmpty(profiles, key),
+													defEncoder.getQuality(), defEncoder.getMaxSize());
+			publishEncoders.put(key, encoder);
+		}
+		
+		int publishQueueLength = Configs.getInt(config, "publish_queue_length", 16);
+		if ( publishQueueLength <= 0 ) {
+			throw new IllegalArgumentException("invalid video.publish_queue_length: " + publishQueueLength);
+		}
+		String overflowStr = Configs.getString(config, "publish_overflow", "drop_oldest");
+		OverflowPolicy publishOverflow;
+		try {
+			publishOverflow = OverflowPolicy.valueOf(overflowStr.trim().toUpperCase());
+		}
+		catch ( IllegalArgumentException e ) {
+			throw new IllegalArgumentException("invalid video.publish_overflow: " + overflowStr);
+		}
+		int publishBatchSize = Math.max(1, Configs.getInt(config, "publish_batch_size", 1));
+		long publishLinger = Configs.getDuration(config, "publish_linger",
+												(publishBatchSize > 1) ? DEF_PUBLISH_LINGER : 0);
+		if ( publishBatchSize > 1 && publishLinger <= 0 ) {
+			throw new IllegalArgumentException("video.publish_linger should be positive when "
+												+ "video.publish_batch_size > 1: " + publishLinger);
+		}
+		
+		return new VideoConfig(videoDir, fps, fourcc, interval, new JpegEncoder(quality, maxSize), nthreads,
+								storeTail, tailBatchSize, tailFlushInterval, tailLogDir, tailLogRetention,
+								sampleMode, Collections.unmodifiableMap(publishEncoders),
+								publishQueueLength, publishOverflow, publishBatchSize, publishLinger);
 	}
 	
 	public File getVideoDir() {
@@ -49,6 +145,13 @@ class VideoConfig {
 		return VideoWriter.fourcc(m_fourcc[0], m_fourcc[1], m_fourcc[2], m_fourcc[3]);
 	}
 	
+	/**
+	 * 설정된 코덱이 모든 프레임을 key 프레임으로 인코딩하는지 여부를 반환한다.
+	 */
+	public boolean isIntraOnlyCodec() {
+		return "MJPG".equalsIgnoreCase(getFourccString());
+	}
+	
 	public float getFps() {
 		return m_fps;
 	}
@@ -56,4 +159,114 @@ class VideoConfig {
 	public long getTailInterval() {
 		return m_tailInterval;
 	}
-}
\ No newline at end of file
+	
+	public JpegEncoder getJpegEncoder() {
+		return m_jpegEncoder;
+	}
+	
+	/**
+	 * 주어진 카메라의 프레임을 topic으로 전송할 때 사용할 JPEG 인코더를 반환한다.
+	 * <p>
+	 * 'publish_profiles'에 카메라 식별자 또는 'default'로 등록된 출력 프로파일이 있으면
+	 * 해당 프로파일의 인코더를, 없으면 {@link #getJpegEncoder()}를 반환한다.
+	 * 카메라 프로파일에 지정되지 않은 항목은 'default' 프로파일의 값을 따른다.
+	 * 아래 예에서 'etri_04' 카메라는 품질 90, 최대 해상도 640x360으로 인코딩된다.
+	 * 비디오 파일과 tail 프레임은 출력 프로파일과 무관하게 원래 설정을 따른다.
+	 * <pre>
+	 * publish_profiles:
+	 *   default: { jpeg_quality: 70, jpeg_max_size: 640x360 }
+	 *   etri_04: { jpeg_quality: 90 }
+	 * </pre>
+	 */
+	public JpegEncoder getPublishEncoder(String cameraId) {
+		JpegEncoder encoder = m_publishEncoders.get(cameraId);
+		if ( encoder == null ) {
+			encoder = m_publishEncoders.getOrDefault("default", m_jpegEncoder);
+		}
+		return encoder;
+	}
+	
+	private static JpegEncoder toPublishEncoder(Map<String,Object> profile, int quality, Size maxSize) {
+		int profQuality = Configs.getInt(profile, "jpeg_quality", quality);
+		Size profMaxSize = profile.containsKey("jpeg_max_size")
+							? Configs.getSize(profile, "jpeg_max_size") : maxSize;
+		return new JpegEncoder(profQuality, profMaxSize);
+	}
+	
+	/**
+	 * 카메라 별로 JPEG 인코딩에 사용할 쓰레드의 수를 반환한다.
+	 * 여러 카메라가 worker pool을 공유하는 경우에는 사용되지 않는다.
+	 */
+	public int getEncodeThreadCount() {
+		return m_encodeThreadCount;
+	}
+	
+	/**
+	 * 인코딩된 프레임을 'camera_frames' 테이블에 저장할지 여부를 반환한다.
+	 */
+	public boolean getStoreTailFrames() {
+		return m_storeTailFrames;
+	}
+	
+	public int getTailBatchSize() {
+		return m_tailBatchSize;
+	}
+	
+	public long getTailFlushInterval() {
+		return m_tailFlushInterval;
+	}
+	
+	/**
+	 * tail 프레임들을 저장할 프레임 로그({@link dric.video.FrameLog}) 디렉토리를 반환한다.
+	 * 설정되지 않은 경우는 {@code null}을 반환하며, 이때는 'camera_frames' 테이블에 저장한다.
+	 */
+	public File getTailLogDir() {
+		return m_tailLogDir;
+	}
+	
+	/**
+	 * 프레임 로그 세그먼트들을 유지할 시간 ('tail_log_retention', 기본값은 'tail_interval'의 두 배)
+	 */
+	public long getTailLogRetention() {
+		return m_tailLogRetention;
+	}
+	
+	/**
+	 * 카메라 프레임 샘플링 방식 ('sample_mode': read 또는 grab, 기본값은 read)
+	 */
+	public OpenCvFrameSampler.Mode getSampleMode() {
+		return m_sampleMode;
+	}
+	
+	/**
+	 * topic 전송 대기 큐의 길이 ('publish_queue_length', 기본값은 16)
+	 */
+	public int getPublishQueueLength() {
+		return m_publishQueueLength;
+	}
+	
+	/**
+	 * topic 전송 대기 큐가 가득 찬 경우의 처리 방식
+	 * ('publish_overflow': drop_oldest, drop_newest 또는 block, 기본값은 drop_oldest)
+	 */
+	public OverflowPolicy getPublishOverflowPolicy() {
+		return m_publishOverflow;
+	}
+	
+	/**
+	 * 한번에 topic에 기록할 최대 프레임 수 ('publish_batch_size', 기본값은 1).
+	 * 1인 경우는 프레임들을 묶지 않고 하나씩 기록한다.
+	 */
+	public int getPublishBatchSize() {
+		return m_publishBatchSize;
+	}
+	
+	/**
+	 * 프레임 묶음이 가득 차지 않더라도 기록하기까지 기다리는 최대 시간 ('publish_linger').
+	 * 프레임들을 묶어 기록하는 경우는 0보다 커야 하며, 기본값은 100ms이다.
+	 * 묶지 않는 경우는 사용되지 않는다.
+	 */
+	public long getPublishLinger() {
+		return m_publishLinger;
+	}
+}
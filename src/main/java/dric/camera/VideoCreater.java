@@ -5,7 +5,15 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfByte;
 import org.opencv.imgcodecs.Imgcodecs;
@@ -13,18 +21,33 @@ import org.opencv.videoio.VideoWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import dric.video.JdbcConnectionPool;
+import dric.video.VideoFrameIndex;
 import utils.LocalDateTimes;
 import utils.StopWatch;
 import utils.UnitUtils;
+import utils.func.Try;
 import utils.func.Tuple;
-import utils.jdbc.JdbcProcessor;
 
 /**
+ * 'camera_frames' 테이블에 저장된 tail 프레임들을 비디오 파일로 변환한다.
+ * <p>
+ * 프레임들은 서버 측 커서를 통해 {@link #FETCH_SIZE}개씩 읽어 최대 {@link #MAX_DECODINGS}개까지
+ * 병렬로 디코딩되고, 캡쳐 시각 순서대로 {@link VideoWriter}에 기록된다. 따라서 변환 구간이
+ * 길어지더라도 메모리 사용량은 일정하게 유지된다. 디코딩은 변환 작업마다 생성되는 크기가
+ * 제한된 쓰레드 pool에서 수행되므로, 에이전트의 캡쳐/인코딩 작업 쓰레드를 점유하지 않는다.
+ * 비디오 정보 등록과 변환된 프레임 삭제는 하나의 트랜잭션으로 처리되며, 변환에 실패한 경우는
+ * 부분적으로 생성된 비디오 파일과 색인 파일을 삭제한다.
  * 
  * @author Kang-Woo Lee (ETRI)
  */
 public class VideoCreater implements Runnable {
 	private static final Logger s_logger = LoggerFactory.getLogger(VideoCreater.class);
+	private static final int FETCH_SIZE = 64;
+	private static final int MAX_DECODINGS = 8;
+	private static final int MAX_DECODE_THREADS = 4;
 	
 	private final DrICCameraAgent m_agent;
 	private final float m_fps;
@@ -37,7 +60,7 @@ public class VideoCreater implements Runnable {
 		m_startTs = startTs;
 		m_stopTs = stopTs;
 	}
-
+	
 	@Override
 	public void run() {
 		Tuple<File, VideoWriter> t = m_agent.createVideoWriter(m_startTs, m_fps);
@@ -49,52 +72,141 @@ public class VideoCreater implements Runnable {
 		}
 		
 		VideoWriter vwriter = t._2;
-		JdbcProcessor jdbc = m_agent.getJdbcProcessor();
-		try ( Connection conn = jdbc.connect(); ) {
-			PreparedStatement pstmt = conn.prepareStatement(SQL_SELECT_FRAMES);
-			pstmt.setString(1, m_agent.getCameraId());
-			pstmt.setLong(2, m_startTs);
-			pstmt.setLong(3, m_stopTs);
-			
-			jdbc.executeQuery(pstmt)
-				.mapOrThrow(this::toFrame)
-				.forEachOrThrow(vwriter::write);
-			insertVideo(t._1);
-			
-			if ( s_logger.isInfoEnabled() ) {
-				String startTime = LocalDateTimes.fromEpochMillis(m_startTs).toString();
-				String durStr = UnitUtils.toSecondString(m_stopTs - m_startTs + 1);
-				String msg = String.format("created a video file: file=%s, time=%s:%s, fps=%.1f, elapsed=%s",
-											t._1, startTime, durStr, m_fps,
-											watch.stopAndGetElpasedTimeString());
-				s_logger.info(msg);
+		VideoFrameIndex.Writer index = new VideoFrameIndex.Writer(t._1,
+															m_agent.getVideoConfig().isIntraOnlyCodec());
+		JdbcConnectionPool pool = m_agent.getConnectionPool();
+		boolean created = false;
+		try ( Connection conn = pool.connect(); ) {
+			// PostgreSQL JDBC 드라이버는 auto-commit 모드가 아닌 경우에만 fetch size 단위로
+			// 결과를 읽어오기 때문에, 변환 전체를 하나의 트랜잭션으로 수행한다.
+			conn.setAutoCommit(false);
+			try {
+				long nframes = transcode(conn, vwriter, index);
+				vwriter.release();
+				index.close();
+				
+				insertVideo(conn, t._1);
+				deleteFrames(conn);
+				conn.commit();
+				created = true;
+				
+				if ( s_logger.isInfoEnabled() ) {
+					String startTime = LocalDateTimes.fromEpochMillis(m_startTs).toString();
+					String durStr = UnitUtils.toSecondString(m_stopTs - m_startTs + 1);
+					String msg = String.format("created a video file: file=%s, time=%s:%s, fps=%.1f, "
+												+ "frames=%d, elapsed=%s",
+												t._1, startTime, durStr, m_fps, nframes,
+												watch.stopAndGetElpasedTimeString());
+					s_logger.info(msg);
+				}
+			}
+			catch ( Exception e ) {
+				Try.run(conn::rollback);
+				throw e;
 			}
 		}
 		catch ( Exception e ) {
-			e.printStackTrace(System.err);
+			s_logger.error("fails to create a video file: file={}, cause={}", t._1, e.toString());
 		}
 		finally {
 			vwriter.release();
-			if ( s_logger.isInfoEnabled() ) {
-				String length = UnitUtils.toSecondString(m_agent.getVideoTailInterval());
-				s_logger.info("created: video file={} length={}", t._1, length);
+			if ( !created ) {
+				index.discard();
+				if ( t._1.exists() && !t._1.delete() ) {
+					s_logger.warn("fails to delete a partial video file: file={}", t._1);
+				}
 			}
+		}
+	}
+	
+	private long transcode(Connection conn, VideoWriter vwriter, VideoFrameIndex.Writer index)
+		throws Exception {
+		// 동시에 진행되는 디코딩은 최대 MAX_DECODINGS개이므로 작업 큐는 넘치지 않는다.
+		int nthreads = Math.min(MAX_DECODE_THREADS, Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = new ThreadPoolExecutor(nthreads, nthreads, 0, TimeUnit.MILLISECONDS,
+												new ArrayBlockingQueue<>(MAX_DECODINGS),
+												new ThreadFactoryBuilder()
+													.setNameFormat("dric-transcode-" + m_agent.getCameraId() + "-%d")
+													.setDaemon(true)
+													.build());
+		
+		// 디코딩 입력 버퍼는 슬롯별로 재사용된다. 슬롯 'i'의 버퍼는 이전에 같은 슬롯을 사용한
+		// 디코딩 결과가 기록된 뒤에만 다시 사용되기 때문에 동시에 접근되지 않는다.
+		MatOfByte[] buffers = new MatOfByte[MAX_DECODINGS];
+		for ( int i =0; i < MAX_DECODINGS; ++i ) {
+			buffers[i] = new MatOfByte();
+		}
+		ArrayDeque<Tuple<Long,CompletableFuture<Mat>>> decodings = new ArrayDeque<>(MAX_DECODINGS);
+		
+		long count = 0;
+		try ( PreparedStatement pstmt = conn.prepareStatement(SQL_SELECT_FRAMES) ) {
+			pstmt.setFetchSize(FETCH_SIZE);
+			pstmt.setString(1, m_agent.getCameraId());
+			pstmt.setLong(2, m_startTs);
+			pstmt.setLong(3, m_stopTs);
 			
-			try ( Connection conn = jdbc.connect(); ) {
-				PreparedStatement pstmt = conn.prepareStatement(SQL_DELETE_FRAMES);
-				pstmt.setString(1, m_agent.getCameraId());
-				pstmt.setLong(2, m_startTs);
-				pstmt.setLong(3, m_stopTs);
-				pstmt.executeUpdate();
+			try ( ResultSet rs = pstmt.executeQuery() ) {
+				while ( rs.next() ) {
+					if ( decodings.size() >= MAX_DECODINGS ) {
+						write(decodings.removeFirst(), vwriter, index);
+					}
+					
+					long ts = rs.getLong(1);
+					byte[] image = rs.getBytes(2);
+					MatOfByte buffer = buffers[(int)(count % MAX_DECODINGS)];
+					CompletableFuture<Mat> decoded = CompletableFuture.supplyAsync(() -> decode(buffer, image),
+																					executor);
+					decodings.addLast(Tuple.of(ts, decoded));
+					++count;
+				}
+			}
+			while ( !decodings.isEmpty() ) {
+				write(decodings.removeFirst(), vwriter, index);
 			}
-			catch ( Exception ignored ) { }
+			
+			return count;
 		}
+		finally {
+			// 오류로 중단된 경우, 진행 중인 디코딩이 끝난 뒤 결과를 해제한다.
+			for ( Tuple<Long,CompletableFuture<Mat>> pending: decodings ) {
+				Try.run(() -> pending._2.join().release());
+			}
+			executor.shutdown();
+			for ( MatOfByte buffer: buffers ) {
+				buffer.release();
+			}
+		}
+	}
+	
+	private static Mat decode(MatOfByte buffer, byte[] image) {
+		// Java 바인딩의 'imdecode'는 출력 Mat을 재사용할 수 없으므로 입력 버퍼만 재사용한다.
+		buffer.create(1, image.length, CvType.CV_8UC1);
+		buffer.put(0, 0, image);
+		return Imgcodecs.imdecode(buffer, Imgcodecs.IMREAD_UNCHANGED);
 	}
 	
-	public void insertVideo(File file) throws SQLException {
-		JdbcProcessor jdbc = m_agent.getJdbcProcessor();
-		try ( Connection conn = jdbc.connect(); ) {
-			PreparedStatement pstmt = conn.prepareStatement(SQL_INSERT_VIDEO);
+	private static void write(Tuple<Long,CompletableFuture<Mat>> decoding, VideoWriter vwriter,
+								VideoFrameIndex.Writer index) throws Exception {
+		Mat frame;
+		try {
+			frame = decoding._2.join();
+		}
+		catch ( CompletionException e ) {
+			Throwable cause = e.getCause();
+			throw (cause instanceof Exception) ? (Exception)cause : e;
+		}
+		
+		try {
+			vwriter.write(frame);
+			index.append(decoding._1);
+		}
+		finally {
+			frame.release();
+		}
+	}
+	
+	private void insertVideo(Connection conn, File file) throws SQLException {
+		try ( PreparedStatement pstmt = conn.prepareStatement(SQL_INSERT_VIDEO) ) {
 			pstmt.setString(1, m_agent.getCameraId());
 			pstmt.setLong(2, m_startTs);
 			pstmt.setLong(3, m_stopTs);
@@ -104,21 +216,27 @@ public class VideoCreater implements Runnable {
 		}
 	}
 	
-	private Mat toFrame(ResultSet rs) throws SQLException {
-		byte[] image = rs.getBytes(1);
-		return Imgcodecs.imdecode(new MatOfByte(image), Imgcodecs.IMREAD_UNCHANGED);
+	private void deleteFrames(Connection conn) throws SQLException {
+		try ( PreparedStatement pstmt = conn.prepareStatement(SQL_DELETE_FRAMES) ) {
+			pstmt.setString(1, m_agent.getCameraId());
+			pstmt.setLong(2, m_startTs);
+			pstmt.setLong(3, m_stopTs);
+			
+			pstmt.executeUpdate();
+		}
 	}
 	
 	private static final String SQL_SELECT_FRAMES
-		= "select image from camera_frames "
+		= "select ts, image from camera_frames "
 		+ "where camera_id = ? "
-		+ "and ts >= ? and ts <= ?";
+		+ "and ts >= ? and ts <= ? "
+		+ "order by ts";
 	
 	private static final String SQL_DELETE_FRAMES
 		= "delete from camera_frames "
 		+ "where camera_id = ? "
 		+ "and ts >= ? and ts <= ?";
-
+	
 	private static final String SQL_INSERT_VIDEO
 		= "insert into camera_videos(camera_id, start_ts, stop_ts, file_path) "
 		+ "values (?, ?, ?, ?)";
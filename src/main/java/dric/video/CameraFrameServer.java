@@ -0,0 +1,67 @@
+package dric.video;
+
+import java.util.List;
+
+import dric.type.CameraFrame;
+import utils.func.FOption;
+import utils.func.Tuple;
+import utils.stream.FStream;
+
+/**
+ * 저장된 카메라 프레임 검색 기능을 제공하는 비디오 서버 인터페이스를 정의한다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public interface CameraFrameServer extends DrICVideoServer {
+	/**
+	 * 주어진 카메라에서 지정된 시각에 캡쳐된 프레임을 반환한다.
+	 * 
+	 * @param cameraId	카메라 식별자
+	 * @param ts	캡쳐 시각
+	 * @return	카메라 프레임
+	 * @throws FrameNotFoundException	해당 시각의 프레임이 없는 경우.
+	 * @throws DrICVideoException	프레임 검색 중 오류가 발생한 경우.
+	 */
+	public CameraFrame getCameraFrame(String cameraId, long ts)
+		throws FrameNotFoundException, DrICVideoException;
+	
+	/**
+	 * 주어진 카메라에서 지정된 구간에 캡쳐된 프레임들을 캡쳐 시각 순서대로 반환한다.
+	 * <p>
+	 * 반환된 스트림은 소비되는 만큼만 프레임을 읽기 때문에, 사용 후에는 반드시 close되어야 한다.
+	 * 
+	 * @param cameraId	카메라 식별자
+	 * @param start	검색 구간 시작 시각
+	 * @param stop	검색 구간 종료 시각
+	 * @return	카메라 프레임 스트림
+	 * @throws DrICVideoException	프레임 검색 중 오류가 발생한 경우.
+	 */
+	public FStream<CameraFrame> queryCameraFrames(String cameraId, long start, long stop)
+		throws DrICVideoException;
+	
+	/**
+	 * {@link #getCameraFrame(String, long)}와 동일하지만 결과를 {@link EncodedFrame} 형태로 반환한다.
+	 */
+	public EncodedFrame getEncodedFrame(String cameraId, long ts)
+		throws FrameNotFoundException, DrICVideoException;
+	
+	/**
+	 * {@link #queryCameraFrames(String, long, long)}와 동일하지만 결과를 {@link EncodedFrame} 형태로 반환한다.
+	 */
+	public FStream<EncodedFrame> queryEncodedFrames(String cameraId, long start, long stop)
+		throws DrICVideoException;
+	
+	/**
+	 * 주어진 (카메라 식별자, 캡쳐 시각) 쌍들에 해당하는 프레임들을 한번에 반환한다.
+	 * <p>
+	 * 요청들은 비디오 파일별로 묶어 캡쳐 시각 순서로 정렬한 뒤, 파일마다 한번의 순차 디코딩으로
+	 * 처리되기 때문에 흩어진 시각의 프레임들을 각각 검색하는 것보다 효율적이다.
+	 * 본 기능은 gRPC 서비스로는 제공되지 않고 Java API로만 제공된다.
+	 * 
+	 * @param keys	(카메라 식별자, 캡쳐 시각) 쌍의 리스트
+	 * @return	요청 순서에 맞춘 프레임 리스트. 해당 프레임이 없는 요청은 {@link FOption#empty()}.
+	 * @throws DrICVideoException	요청 수가 구현체의 최대 요청 수를 넘거나, 프레임 검색 중 오류가 발생한 경우.
+	 */
+	public List<FOption<EncodedFrame>> getEncodedFrames(List<Tuple<String,Long>> keys)
+		throws DrICVideoException;
+}
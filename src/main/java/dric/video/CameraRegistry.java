@@ -0,0 +1,198 @@
+package dric.video;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import dric.proto.CameraInfo;
+import utils.func.FOption;
+import utils.func.Try;
+
+/**
+ * 'cameras' 테이블에 등록된 카메라 정보들을 메모리에 유지하는 레지스트리를 정의한다.
+ * <p>
+ * 카메라 정보는 처음 접근할 때 한번 적재되며, 이후의 조회는 데이터베이스를 접근하지 않는다.
+ * 카메라가 등록/삭제되면 {@link #invalidate()}를 통해 무효화되고 다음 접근시 다시 적재된다.
+ * {@link #startListening(long)}이 호출된 경우는 PostgreSQL의 'LISTEN/NOTIFY'를 이용하여
+ * 다른 프로세스에서 변경한 내용도 반영한다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class CameraRegistry implements AutoCloseable {
+	private static final Logger s_logger = LoggerFactory.getLogger(CameraRegistry.class);
+	private static final String NOTIFY_CHANNEL = "dric_cameras";
+	
+	private final JdbcConnectionPool m_pool;
+	private final Object m_loadLock = new Object();
+	private volatile Map<String,CameraInfo> m_cameras;	// 적재되지 않았거나 무효화된 경우는 null
+	private long m_version = 0;		// 무효화될 때마다 증가된다. (m_loadLock으로 보호)
+	
+	private ScheduledExecutorService m_listener;	// 변경 알림을 받지 않는 경우는 null
+	private volatile Connection m_listenConn;
+	
+	public CameraRegistry(JdbcConnectionPool pool) {
+		m_pool = pool;
+	}
+	
+	/**
+	 * 주어진 식별자의 카메라 정보를 반환한다.
+	 *
+	 * @param cameraId	카메라 식별자
+	 * @return	카메라 정보. 등록되지 않은 카메라인 경우는 {@link FOption#empty()}.
+	 * @throws SQLException	카메라 정보 적재 중 오류가 발생된 경우.
+	 */
+	public FOption<CameraInfo> get(String cameraId) throws SQLException {
+		CameraInfo info = getCameraMap().get(cameraId);
+		return (info != null) ? FOption.of(info) : FOption.empty();
+	}
+	
+	/**
+	 * 등록된 모든 카메라 정보의 스냅샷을 반환한다.
+	 *
+	 * @return	카메라 정보 리스트
+	 * @throws SQLException	카메라 정보 적재 중 오류가 발생된 경우.
+	 */
+	public List<CameraInfo> getAll() throws SQLException {
+		return Collections.unmodifiableList(Lists.newArrayList(getCameraMap().values()));
+	}
+	
+	/**
+	 * 적재된 카메라 정보들을 무효화시킨다.
+	 */
+	public void invalidate() {
+		synchronized ( m_loadLock ) {
+			++m_version;
+			m_cameras = null;
+		}
+	}
+	
+	/**
+	 * 카메라 정보 변경 사실을 다른 프로세스의 레지스트리들에게 알린다.
+	 * <p>
+	 * 알림은 주어진 연결의 트랜잭션이 commit될 때 전달된다.
+	 */
+	public void notifyChanged(Connection conn) throws SQLException {
+		try ( Statement stmt = conn.createStatement() ) {
+			stmt.execute("notify " + NOTIFY_CHANNEL);
+		}
+	}
+	
+	/**
+	 * 다른 프로세스에서의 카메라 정보 변경 알림 수신을 시작한다.
+	 * <p>
+	 * PostgreSQL JDBC 드라이버는 서버와 통신할 때만 알림을 수신하기 때문에,
+	 * 별도 연결을 통해 주어진 주기마다 알림 도착 여부를 확인한다.
+	 *
+	 * @param pollInterval	알림 확인 주기 (ms)
+	 */
+	public synchronized void startListening(long pollInterval) {
+		if ( m_listener != null ) {
+			return;
+		}
+		
+		m_listener = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+																.setNameFormat("dric-camera-listener")
+																.setDaemon(true)
+																.build());
+		m_listener.scheduleWithFixedDelay(this::pollNotifications, 0, pollInterval, TimeUnit.MILLISECONDS);
+	}
+	
+	@Override
+	public synchronized void close() {
+		if ( m_listener != null ) {
+			m_listener.shutdownNow();
+			m_listener = null;
+		}
+		closeListenConnection();
+	}
+	
+	private Map<String,CameraInfo> getCameraMap() throws SQLException {
+		Map<String,CameraInfo> cameras = m_cameras;
+		if ( cameras != null ) {
+			return cameras;
+		}
+		
+		synchronized ( m_loadLock ) {
+			if ( m_cameras == null ) {
+				long version = m_version;
+				cameras = load();
+				
+				// 적재 도중 무효화된 경우는 적재 결과를 캐싱하지 않는다.
+				if ( version == m_version ) {
+					m_cameras = cameras;
+				}
+				return cameras;
+			}
+			return m_cameras;
+		}
+	}
+	
+	private Map<String,CameraInfo> load() throws SQLException {
+		Map<String,CameraInfo> cameras = Maps.newLinkedHashMap();
+		try ( Connection conn = m_pool.connect() ) {
+			PreparedStatement pstmt = conn.prepareStatement("select id, rtsp_url from cameras");
+			m_pool.getJdbcProcessor()
+					.executeQuery(pstmt)
+					.mapOrThrow(rs -> CameraInfo.newBuilder()
+												.setId(rs.getString(1))
+												.setRtspUrl(rs.getString(2))
+												.build())
+					.forEach(info -> cameras.put(info.getId(), info));
+		}
+		
+		if ( s_logger.isDebugEnabled() ) {
+			s_logger.debug("loaded cameras: count={}", cameras.size());
+		}
+		return Collections.unmodifiableMap(cameras);
+	}
+	
+	private void pollNotifications() {
+		try {
+			if ( m_listenConn == null ) {
+				m_listenConn = m_pool.getJdbcProcessor().connect();
+				try ( Statement stmt = m_listenConn.createStatement() ) {
+					stmt.execute("listen " + NOTIFY_CHANNEL);
+				}
+				
+				// 연결이 끊긴 동안의 변경을 놓쳤을 수 있으므로 다시 적재하도록 한다.
+				invalidate();
+			}
+			
+			try ( Statement stmt = m_listenConn.createStatement() ) {
+				stmt.execute("select 1");
+			}
+			PGNotification[] notis = m_listenConn.unwrap(PGConnection.class).getNotifications();
+			if ( notis != null && notis.length > 0 ) {
+				invalidate();
+			}
+		}
+		catch ( SQLException e ) {
+			s_logger.warn("fails to poll camera notifications: cause={}", e.toString());
+			closeListenConnection();
+		}
+	}
+	
+	private void closeListenConnection() {
+		Connection conn = m_listenConn;
+		m_listenConn = null;
+		if ( conn != null ) {
+			Try.run(conn::close);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package dric.video;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.opencv.core.Size;
+
+import dric.ConfigUtils;
+
+/**
+ * 설정 파일에서 생략 가능한 설정 항목들을 읽기 위한 함수들을 정의한다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class Configs {
+	private Configs() {
+		throw new AssertionError("Should not be called this one: " + Configs.class);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static Map<String,Object> getSubConfigOrEmpty(Map<String,Object> config, String key) {
+		Object sub = config.get(key);
+		if ( sub == null ) {
+			return Collections.emptyMap();
+		}
+		else if ( sub instanceof Map ) {
+			return (Map<String,Object>)sub;
+		}
+		else {
+			throw new IllegalArgumentException("invalid sub-configuration: key=" + key + ", value=" + sub);
+		}
+	}
+	
+	public static String getString(Map<String,Object> config, String key, String defValue) {
+		Object value = config.get(key);
+		return (value != null) ? value.toString().trim() : defValue;
+	}
+	
+	public static int getInt(Map<String,Object> config, String key, int defValue) {
+		Object value = config.get(key);
+		if ( value == null ) {
+			return defValue;
+		}
+		else if ( value instanceof Number ) {
+			return ((Number)value).intValue();
+		}
+		else {
+			return Integer.parseInt(value.toString().trim());
+		}
+	}
+	
+	public static long getLong(Map<String,Object> config, String key, long defValue) {
+		Object value = config.get(key);
+		if ( value == null ) {
+			return defValue;
+		}
+		else if ( value instanceof Number ) {
+			return ((Number)value).longValue();
+		}
+		else {
+			return Long.parseLong(value.toString().trim());
+		}
+	}
+	
+	public static boolean getBoolean(Map<String,Object> config, String key, boolean defValue) {
+		Object value = config.get(key);
+		if ( value == null ) {
+			return defValue;
+		}
+		else if ( value instanceof Boolean ) {
+			return (Boolean)value;
+		}
+		else {
+			return Boolean.parseBoolean(value.toString().trim());
+		}
+	}
+	
+	/**
+	 * 주어진 설정 항목을 시간 간격 (millisecond)으로 해석한다.
+	 * 설정 값의 형식은 {@link ConfigUtils#parseDuration(Map, String)}을 따른다.
+	 */
+	public static long getDuration(Map<String,Object> config, String key, long defValue) {
+		return config.containsKey(key) ? ConfigUtils.parseDuration(config, key) : defValue;
+	}
+	
+	/**
+	 * 주어진 설정 항목을 '{@code <width>x<height>}' 형식의 해상도로 해석한다.
+	 * 
+	 * @return	해상도. 설정 항목이 없는 경우는 {@code null}.
+	 */
+	public static Size getSize(Map<String,Object> config, String key) {
+		Object value = config.get(key);
+		if ( value == null ) {
+			return null;
+		}
+		
+		String[] parts = value.toString().trim().toLowerCase().split("x");
+		if ( parts.length != 2 ) {
+			throw new IllegalArgumentException("invalid size: key=" + key + ", value=" + value);
+		}
+		return new Size(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+	}
+}
@@ -1,38 +1,87 @@
 package dric.video;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Longs;
 
 import dric.ConfigUtils;
 import dric.proto.CameraInfo;
 import dric.proto.PlaybackStreamRequest;
 import dric.proto.VideoStream;
 import dric.type.CameraFrame;
+import dric.video.VideoSegmentIndex.Segment;
 import utils.func.FOption;
 import utils.func.Funcs;
+import utils.func.Tuple;
 import utils.func.Try;
 import utils.jdbc.JdbcProcessor;
 import utils.stream.FStream;
+import utils.stream.FStreams.AbstractFStream;
 
 /**
  * 
  * @author Kang-Woo Lee (ETRI)
  */
-public class DrICVideoServerImpl implements DrICVideoServer {
+public class DrICVideoServerImpl implements CameraFrameServer {
+	private static final Logger s_logger = LoggerFactory.getLogger(DrICVideoServerImpl.class);
+	private static final int MAX_FRAME_KEYS = 1024;	// getEncodedFrames() 한번에 요청 가능한 최대 프레임 수
+	
 	private final VideoServerConfig m_config;
 	private final JdbcProcessor m_jdbc;
+	private final JdbcConnectionPool m_pool;
+	private final VideoSegmentIndex m_index;
+	private final CameraRegistry m_cameras;
+	private final FrameCache m_frameCache;
+	private final VideoDecoderPool m_decoders;
 	
 	public DrICVideoServerImpl(VideoServerConfig config) {
 		m_config = config;
 		m_jdbc = ConfigUtils.getJdbcProcessor(config.getJdbcEndPoint());
+		m_pool = new JdbcConnectionPool(m_jdbc, config.getJdbcPoolConfig());
+		
+		m_frameCache = new FrameCache(config.getFrameCacheConfig());
+		m_decoders = new VideoDecoderPool(config.getDecoderPoolSize(), config.getDecoderIdleTimeout());
+		m_index = new VideoSegmentIndex(m_pool, VideoSegmentIndex.DEF_REFRESH_INTERVAL,
+										config.getSegmentLateWindow());
+		m_cameras = new CameraRegistry(m_pool);
+		if ( config.getCameraNotifyInterval() > 0 ) {
+			m_cameras.startListening(config.getCameraNotifyInterval());
+		}
+		try {
+			m_index.loadAll();
+		}
+		catch ( SQLException e ) {
+			// 적재하지 못한 구간들은 이후 카메라별 검색 과정에서 적재된다.
+			s_logger.warn("fails to load video segments: cause={}", e.toString());
+		}
+	}
+	
+	/**
+	 * 비디오 서버가 사용하는 자원들을 반환한다.
+	 * <p>
+	 * 카메라 변경 알림을 위한 LISTEN 연결과 polling 쓰레드, 디코더와 프레임 캐시,
+	 * 그리고 JDBC 연결 pool이 차례대로 close된다.
+	 */
+	public void close() {
+		m_cameras.close();
+		m_decoders.close();
+		m_frameCache.close();
+		m_pool.close();
 	}
 	
 	@Override
@@ -41,7 +90,7 @@ public class DrICVideoServerImpl implements DrICVideoServer {
 		
 		Connection conn = null;
 		try {
-			conn = m_jdbc.connect();
+			conn = m_pool.connect();
 			conn.setAutoCommit(false);
 			
 			if ( getCameraInfo(conn, info.getId()).isPresent() ) {
@@ -52,11 +101,15 @@ public class DrICVideoServerImpl implements DrICVideoServer {
 			pstmt.setString(1, info.getId());
 			pstmt.setString(2, info.getRtspUrl());
 			pstmt.executeUpdate();
+			m_cameras.notifyChanged(conn);
 			conn.commit();
+			m_cameras.invalidate();
 		}
 		catch ( SQLException e ) {
 			try {
-				conn.rollback();
+				if ( conn != null ) {
+					conn.rollback();
+				}
 			}
 			catch ( SQLException e2 ) { }
 			
@@ -76,22 +129,25 @@ public class DrICVideoServerImpl implements DrICVideoServer {
 	public void removeCamera(String id) throws DrICVideoException {
 		String sql = "delete from cameras where id = ?";
 		
-		try {
-			m_jdbc.executeUpdate(sql, pstmt -> {
-				pstmt.setString(1, id);
-			});
+		try ( Connection conn = m_pool.connect() ) {
+			PreparedStatement pstmt = conn.prepareStatement(sql);
+			pstmt.setString(1, id);
+			pstmt.executeUpdate();
+			m_cameras.notifyChanged(conn);
 		}
 		catch ( SQLException e ) {
 			throw new DrICVideoException("" + e);
 		}
-		catch ( ExecutionException e ) { }
+		finally {
+			m_cameras.invalidate();
+		}
 	}
 
 	@Override
 	public CameraInfo getCamera(String cameraId) throws CameraNotFoundException, DrICVideoException {
-		try ( Connection conn = m_jdbc.connect() ) {
-			return getCameraInfo(conn, cameraId)
-					.getOrThrow(() -> new CameraNotFoundException(cameraId));
+		try {
+			return m_cameras.get(cameraId)
+							.getOrThrow(() -> new CameraNotFoundException(cameraId));
 		}
 		catch ( SQLException e ) {
 			throw new DrICVideoException("" + e);
@@ -101,8 +157,7 @@ public class DrICVideoServerImpl implements DrICVideoServer {
 	@Override
 	public FStream<CameraInfo> getCameraAll() throws DrICVideoException {
 		try {
-			return m_jdbc.streamQuery("select id, rtsp_url from cameras")
-							.mapOrThrow(this::toCameraInfo);
+			return FStream.from(m_cameras.getAll());
 		}
 		catch ( SQLException e ) {
 			throw new DrICVideoException("" + e);
@@ -115,42 +170,47 @@ public class DrICVideoServerImpl implements DrICVideoServer {
 	}
 	
 	public List<Video> queryVideos(String camId, long start, long stop) throws DrICVideoException {
-		String sql = "select camera_id, start_ts, stop_ts, file_path "
-					+ "from camera_videos "
-					+ "where camera_id = ? "
-					+ "and stop_ts >= ? and start_ts <= ? "
-					+ "order by start_ts";
-		try ( Connection conn = m_jdbc.connect() ) {
-			PreparedStatement pstmt = conn.prepareStatement(sql);
-			pstmt.setString(1, camId);
-			pstmt.setLong(2, start);
-			pstmt.setLong(3, stop);
-			return m_jdbc.executeQuery(pstmt)
-						.mapOrThrow(this::toVideo)
-						.toList();
+		try {
+			return FStream.from(m_index.range(camId, start, stop))
+							.map(this::toVideo)
+							.toList();
 		}
 		catch ( SQLException e ) {
 			throw new DrICVideoException("" + e);
 		}
 	}
 	
+	@Override
 	public CameraFrame getCameraFrame(String cameraId, long ts)
+		throws FrameNotFoundException, DrICVideoException {
+		return getEncodedFrame(cameraId, ts).toCameraFrame();
+	}
+
+	@Override
+	public FStream<CameraFrame> queryCameraFrames(String cameraId, long start, long stop)
+		throws DrICVideoException {
+		return queryEncodedFrames(cameraId, start, stop).map(EncodedFrame::toCameraFrame);
+	}
+	
+	@Override
+	public EncodedFrame getEncodedFrame(String cameraId, long ts)
 		throws FrameNotFoundException, DrICVideoException {
 		try {
 			Video video = getVideo(cameraId, ts);
 			if ( video != null ) {
-				return video.getFrame(ts);
+				return m_frameCache.getFrame(video, ts);
 			}
 			else {
 				return getTailFrame(cameraId, ts);
 			}
 		}
-		catch ( SQLException e ) {
+		catch ( SQLException | IOException e ) {
 			throw new DrICVideoException("" + e);
 		}
 	}
 
-	public FStream<CameraFrame> queryCameraFrames(String cameraId, long start, long stop)
+	@Override
+	public FStream<EncodedFrame> queryEncodedFrames(String cameraId, long start, long stop)
 		throws DrICVideoException {
 		try {
 			List<Video> videoList = queryVideos(cameraId, start, stop);
@@ -158,38 +218,90 @@ public class DrICVideoServerImpl implements DrICVideoServer {
 			long fileLast = Funcs.applyIfNotNull(last, v -> v.stop(), start-1);
 			
 			return FStream.from(videoList)
-							.flatMap(video -> video.frames(start, stop))
+							.flatMap(video -> video.encodedFrames(start, stop))
 							.concatWith(tailFrames(cameraId, fileLast+1, stop));
 		}
-		catch ( SQLException e ) {
+		catch ( SQLException | IOException e ) {
 			throw new DrICVideoException("" + e);
 		}
 	}
 	
-	private Video getVideo(String cameraId, long ts) throws SQLException {
-		String sql = "select camera_id, start_ts, stop_ts, file_path "
-					+ "from camera_videos "
-					+ "where camera_id = ? "
-					+ "and start_ts <= ? and stop_ts >= ?";
+	@Override
+	public List<FOption<EncodedFrame>> getEncodedFrames(List<Tuple<String,Long>> keys)
+		throws DrICVideoException {
+		if ( keys.size() > MAX_FRAME_KEYS ) {
+			throw new DrICVideoException(String.format("too many frame requests: count=%d, max=%d",
+														keys.size(), MAX_FRAME_KEYS));
+		}
 		
-		try ( Connection conn = m_jdbc.connect() ) {
-			PreparedStatement pstmt = conn.prepareStatement(sql);
-			pstmt.setString(1, cameraId);
-			pstmt.setLong(2, ts);
-			pstmt.setLong(3, ts);
-			return m_jdbc.executeQuery(pstmt)
-							.mapOrThrow(this::toVideo)
-							.findFirst()
-							.getOrNull();
+		Map<String,Map<Long,EncodedFrame>> found = Maps.newHashMap();
+		
+		// 캐싱되지 않은 요청들을 비디오 파일별로 묶고, 파일에 포함되지 않은 요청들은
+		// 'camera_frames' 테이블에서 찾도록 카메라별로 묶는다.
+		Map<String,Tuple<Video,TreeSet<Long>>> fileBatches = Maps.newHashMap();
+		Map<String,TreeSet<Long>> tailBatches = Maps.newHashMap();
+		try {
+			for ( Tuple<String,Long> key: keys ) {
+				EncodedFrame cached = m_frameCache.getIfPresent(key._1, key._2);
+				if ( cached != null ) {
+					addFound(found, cached);
+					continue;
+				}
+				
+				Segment seg = m_index.find(key._1, key._2);
+				if ( seg != null ) {
+					fileBatches.computeIfAbsent(seg.path(), p -> Tuple.of(toVideo(seg), new TreeSet<Long>()))
+								._2.add(key._2);
+				}
+				else {
+					tailBatches.computeIfAbsent(key._1, k -> new TreeSet<>()).add(key._2);
+				}
+			}
+			
+			// 비디오 파일마다 정렬된 시각 순서로 한번만 디코딩한다.
+			for ( Tuple<Video,TreeSet<Long>> batch: fileBatches.values() ) {
+				for ( EncodedFrame frame: batch._1.encodedFrames(Longs.toArray(batch._2)) ) {
+					m_frameCache.put(frame.cameraId(), frame.ts(), frame.jpeg());
+					addFound(found, frame);
+				}
+			}
+			for ( Map.Entry<String,TreeSet<Long>> batch: tailBatches.entrySet() ) {
+				getTailFrames(batch.getKey(), batch.getValue()).forEach(frame -> addFound(found, frame));
+			}
+		}
+		catch ( SQLException | IOException e ) {
+			throw new DrICVideoException("" + e);
 		}
+		
+		List<FOption<EncodedFrame>> results = Lists.newArrayListWithExpectedSize(keys.size());
+		for ( Tuple<String,Long> key: keys ) {
+			Map<Long,EncodedFrame> frames = found.get(key._1);
+			EncodedFrame frame = (frames != null) ? frames.get(key._2) : null;
+			results.add((frame != null) ? FOption.of(frame) : FOption.empty());
+		}
+		return results;
+	}
+	
+	private static void addFound(Map<String,Map<Long,EncodedFrame>> found, EncodedFrame frame) {
+		found.computeIfAbsent(frame.cameraId(), k -> Maps.newHashMap()).put(frame.ts(), frame);
+	}
+	
+	private Video getVideo(String cameraId, long ts) throws SQLException {
+		Segment seg = m_index.find(cameraId, ts);
+		return (seg != null) ? toVideo(seg) : null;
 	}
 	
-	private CameraFrame getTailFrame(String camId, long ts)
-		throws SQLException, FrameNotFoundException {
+	private EncodedFrame getTailFrame(String camId, long ts)
+		throws SQLException, IOException, FrameNotFoundException {
+		if ( m_config.isTailFrameLogEnabled() ) {
+			return getFrameLog(camId).getFrame(ts)
+									.getOrThrow(() -> new FrameNotFoundException(camId, ts));
+		}
+		
 		String sql = "select camera_id, ts, image from camera_frames "
 					+ 	"where camera_id = ? and ts = ?";
 		
-		try ( Connection conn = m_jdbc.connect() ) {
+		try ( Connection conn = m_pool.connect() ) {
 			PreparedStatement pstmt = conn.prepareStatement(sql);
 			pstmt.setString(1, camId);
 			pstmt.setLong(2, ts);
@@ -200,14 +312,102 @@ public class DrICVideoServerImpl implements DrICVideoServer {
 		}
 	}
 	
-	private FStream<CameraFrame> tailFrames(String camId, long start, long stop) throws SQLException {
-		try ( Connection conn = m_jdbc.connect() ) {
-			PreparedStatement pstmt = conn.prepareStatement(SQL_SELECT_FRAMES);
+	private List<EncodedFrame> getTailFrames(String camId, TreeSet<Long> tsSet)
+		throws SQLException, IOException {
+		if ( m_config.isTailFrameLogEnabled() ) {
+			return getFrameLog(camId).getFrames(Longs.toArray(tsSet));
+		}
+		
+		String sql = "select camera_id, ts, image from camera_frames "
+					+ 	"where camera_id = ? and ts = any(?)";
+		
+		try ( Connection conn = m_pool.connect() ) {
+			PreparedStatement pstmt = conn.prepareStatement(sql);
 			pstmt.setString(1, camId);
-			pstmt.setLong(2, start);
-			pstmt.setLong(3, stop);
+			pstmt.setArray(2, conn.createArrayOf("bigint", tsSet.toArray(new Long[tsSet.size()])));
 			return m_jdbc.executeQuery(pstmt)
-							.mapOrThrow(this::toFrame);
+							.mapOrThrow(this::toFrame)
+							.toList();
+		}
+	}
+	
+	private FStream<EncodedFrame> tailFrames(String camId, long start, long stop)
+		throws SQLException, IOException {
+		if ( m_config.isTailFrameLogEnabled() ) {
+			return getFrameLog(camId).frames(start, stop);
+		}
+		return new TailFrameStream(camId, start, stop);
+	}
+	
+	private FrameLog getFrameLog(String camId) {
+		return new FrameLog(m_config.getVideoTailFolder(), camId);
+	}
+	
+	/**
+	 * 'camera_frames' 테이블에서 주어진 구간의 프레임들을 차례대로 읽는 스트림.
+	 * <p>
+	 * 연결과 cursor는 첫번째 프레임을 요청할 때 생성되기 때문에, 비디오 파일 프레임들 뒤에
+	 * 연결된 경우에도 파일 프레임들을 모두 읽을 때까지 pool의 연결을 점유하지 않는다.
+	 * 이후 스트림이 close될 때까지 연결을 점유하며, 서버측 cursor를 사용하여
+	 * 프레임들을 {@link #FETCH_SIZE}개 단위로 읽어온다.
+	 */
+	private class TailFrameStream extends AbstractFStream<EncodedFrame> {
+		private static final int FETCH_SIZE = 64;
+		
+		private final String m_camId;
+		private final long m_start;
+		private final long m_stop;
+		private Connection m_conn;	// 첫번째 프레임이 요청되기 전까지는 null
+		private ResultSet m_rs;
+		
+		TailFrameStream(String camId, long start, long stop) {
+			m_camId = camId;
+			m_start = start;
+			m_stop = stop;
+		}
+		
+		@Override
+		protected void closeInGuard() throws Exception {
+			if ( m_conn != null ) {
+				try {
+					m_rs.close();
+				}
+				finally {
+					m_conn.close();
+				}
+			}
+		}
+		
+		@Override
+		public FOption<EncodedFrame> next() {
+			try {
+				if ( m_conn == null ) {
+					open();
+				}
+				return m_rs.next() ? FOption.of(toFrame(m_rs)) : FOption.empty();
+			}
+			catch ( SQLException e ) {
+				throw new IllegalStateException("fails to read camera frames: cause=" + e, e);
+			}
+		}
+		
+		private void open() throws SQLException {
+			Connection conn = m_pool.connect();
+			try {
+				// PostgreSQL은 auto-commit 모드가 아닌 경우에만 fetch size를 적용한다.
+				conn.setAutoCommit(false);
+				PreparedStatement pstmt = conn.prepareStatement(SQL_SELECT_FRAMES);
+				pstmt.setFetchSize(FETCH_SIZE);
+				pstmt.setString(1, m_camId);
+				pstmt.setLong(2, m_start);
+				pstmt.setLong(3, m_stop);
+				m_rs = pstmt.executeQuery();
+				m_conn = conn;
+			}
+			catch ( SQLException e ) {
+				conn.close();
+				throw e;
+			}
 		}
 	}
 	
@@ -236,13 +436,13 @@ public class DrICVideoServerImpl implements DrICVideoServer {
 						.build();
 	}
 	
-	private Video toVideo(ResultSet rs) throws SQLException {
-		return new Video(rs.getString(1), rs.getLong(2), rs.getLong(3),
-								new File(rs.getString(4)));
+	private Video toVideo(Segment seg) {
+		return new Video(seg.cameraId(), seg.start(), seg.stop(), new File(seg.path()),
+						m_config.getJpegEncoder(), m_decoders);
 	}
 	
-	private CameraFrame toFrame(ResultSet rs) throws SQLException {
-		return new CameraFrame(rs.getString(1), rs.getBytes(3), rs.getLong(2));
+	private EncodedFrame toFrame(ResultSet rs) throws SQLException {
+		return new EncodedFrame(rs.getString(1), rs.getBytes(3), rs.getLong(2));
 	}
 
 	private static final String SQL_CREATE_VIDEOS
@@ -6,18 +6,28 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.PropertyConfigurator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import dric.proto.EndPoint;
 import dric.video.grpc.PBDrICVideoServerServant;
 import dric.video.sunapi.SunApiVideoServerImpl;
 import io.grpc.Server;
 import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
 import opencvj.OpenCvInitializer;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
@@ -47,6 +57,10 @@ public class DrICVideoServerMain implements Runnable {
 	@Mixin private UsageHelp m_help;
 
 	private File m_homeDir;
+	private EventLoopGroup m_bossGroup;
+	private EventLoopGroup m_workerGroup;
+	private ExecutorService m_callExecutor;
+	private ExecutorService m_videoExecutor;
 	
 	@Option(names={"--config"}, paramLabel="path", description={"VideoServer configration file"})
 	private File m_configFile;
@@ -105,7 +119,7 @@ public class DrICVideoServerMain implements Runnable {
 			loadOpenCv(config);
 			
 			EndPoint ep = config.getVideoServerEndPoint();
-			Server server = createServer(videoServer, ep.getPort());
+			Server server = createServer(videoServer, ep.getPort(), config.getGrpcServerConfig());
 	    	Runtime.getRuntime().addShutdownHook(new Thread() {
 	    		public void run() {
 	    			server.shutdown();
@@ -118,6 +132,8 @@ public class DrICVideoServerMain implements Runnable {
 				System.out.printf("started: DrICVideoServer[host=%s, port=%d]%n", host, ep.getPort());
 			}
 			server.awaitTermination();
+			shutdownServerThreads();
+			videoServer.close();
 		}
 		catch ( Exception e ) {
 			System.err.printf("failed: %s%n%n", e);
@@ -134,13 +150,54 @@ public class DrICVideoServerMain implements Runnable {
 		}
 	}
 	
-	private Server createServer(DrICVideoServer server, int port) {
-		PBDrICVideoServerServant servant = new PBDrICVideoServerServant(server);
+	private Server createServer(DrICVideoServer server, int port, GrpcServerConfig conf) {
+		if ( s_logger.isInfoEnabled() ) {
+			s_logger.info("gRPC server: {}", conf);
+		}
+		
+		m_bossGroup = new NioEventLoopGroup(conf.getBossThreads(), newThreadFactory("dric-grpc-boss-%d"));
+		m_workerGroup = new NioEventLoopGroup(conf.getWorkerThreads(), newThreadFactory("dric-grpc-worker-%d"));
+		m_callExecutor = Executors.newFixedThreadPool(conf.getCallThreads(),
+														newThreadFactory("dric-grpc-call-%d"));
+		
+		// 블로킹 비디오 작업은 크기가 제한된 별도 쓰레드 pool에서 처리하여,
+		// 카메라 정보 조회 등의 가벼운 호출이 프레임 디코딩 요청 뒤에서 대기하지 않도록 한다.
+		m_videoExecutor = new ThreadPoolExecutor(conf.getVideoThreads(), conf.getVideoThreads(),
+												0, TimeUnit.MILLISECONDS,
+												new ArrayBlockingQueue<>(conf.getVideoQueueLength()),
+												newThreadFactory("dric-video-%d"));
+		
+		PBDrICVideoServerServant servant = new PBDrICVideoServerServant(server, m_videoExecutor);
 		Server nettyServer = NettyServerBuilder.forPort(port)
+												.bossEventLoopGroup(m_bossGroup)
+												.workerEventLoopGroup(m_workerGroup)
+												.channelType(NioServerSocketChannel.class)
+												.executor(m_callExecutor)
+												.maxInboundMessageSize(conf.getMaxInboundMessageSize())
+												.maxConcurrentCallsPerConnection(
+														conf.getMaxConcurrentCallsPerConnection())
+												.keepAliveTime(conf.getKeepAliveTime(), TimeUnit.MILLISECONDS)
+												.keepAliveTimeout(conf.getKeepAliveTimeout(), TimeUnit.MILLISECONDS)
+												.permitKeepAliveTime(conf.getPermitKeepAliveTime(),
+																	TimeUnit.MILLISECONDS)
 												.addService(servant)
 												.build();
 		return nettyServer;
 	}
+	
+	private void shutdownServerThreads() {
+		m_videoExecutor.shutdown();
+		m_callExecutor.shutdown();
+		m_workerGroup.shutdownGracefully();
+		m_bossGroup.shutdownGracefully();
+	}
+	
+	private static ThreadFactory newThreadFactory(String nameFormat) {
+		return new ThreadFactoryBuilder()
+					.setNameFormat(nameFormat)
+					.setDaemon(true)
+					.build();
+	}
 
 	private void loadOpenCv(VideoServerConfig config) throws IOException {
 		if ( config.getOpenCvDllList().size() > 0 ) {
@@ -0,0 +1,45 @@
+package dric.video;
+
+import dric.type.CameraFrame;
+
+/**
+ * JPEG으로 인코딩된 카메라 프레임을 정의한다.
+ * <p>
+ * {@link CameraFrame}과 동일한 정보를 갖지만, 인코딩 결과 byte 배열을 복사 없이 그대로 유지하기
+ * 때문에 gRPC 응답 메시지 생성시 이미지 복사를 피하기 위해 사용된다.
+ * 따라서 {@link #jpeg()}가 반환한 배열은 변경되지 않아야 한다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class EncodedFrame {
+	private final String m_cameraId;
+	private final byte[] m_jpeg;
+	private final long m_ts;
+	
+	public EncodedFrame(String cameraId, byte[] jpeg, long ts) {
+		m_cameraId = cameraId;
+		m_jpeg = jpeg;
+		m_ts = ts;
+	}
+	
+	public String cameraId() {
+		return m_cameraId;
+	}
+	
+	public byte[] jpeg() {
+		return m_jpeg;
+	}
+	
+	public long ts() {
+		return m_ts;
+	}
+	
+	public CameraFrame toCameraFrame() {
+		return new CameraFrame(m_cameraId, m_jpeg, m_ts);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s[ts=%d, size=%d]", m_cameraId, m_ts, m_jpeg.length);
+	}
+}
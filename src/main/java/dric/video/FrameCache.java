@@ -0,0 +1,272 @@
+package dric.video;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import utils.func.FOption;
+import utils.func.Try;
+import utils.stream.FStream;
+
+/**
+ * 비디오 파일에서 읽어 JPEG으로 인코딩한 프레임들을 (카메라 식별자, 캡쳐 시각) 단위로 캐싱한다.
+ * <p>
+ * 캐시는 저장된 JPEG 이미지 크기의 합으로 제한되며, 가장 오래 사용되지 않은 프레임부터 제거된다.
+ * 동일 카메라에 대한 캐시 실패가 짧은 시간 간격으로 연속해서 발생하는 경우에는 순차 접근으로
+ * 간주하여, 요청된 프레임을 읽은 디코더를 이용해 후속 프레임들을 별도 쓰레드에서 미리 읽어 둔다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class FrameCache implements AutoCloseable {
+	private static final Logger s_logger = LoggerFactory.getLogger(FrameCache.class);
+	private static final int PREFETCH_QUEUE_LENGTH = 4;
+	
+	private final FrameCacheConfig m_config;
+	private final LinkedHashMap<Key,byte[]> m_frames = new LinkedHashMap<>(1024, 0.75f, true);
+	private long m_totalBytes = 0;
+	private final ConcurrentMap<String,Long> m_lastMisses = new ConcurrentHashMap<>();
+	private final ThreadPoolExecutor m_prefetcher;
+	
+	private final AtomicLong m_hitCount = new AtomicLong();
+	private final AtomicLong m_missCount = new AtomicLong();
+	private final AtomicLong m_evictCount = new AtomicLong();
+	private final AtomicLong m_prefetchCount = new AtomicLong();
+	
+	public FrameCache(FrameCacheConfig config) {
+		m_config = config;
+		m_prefetcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+											new ArrayBlockingQueue<>(PREFETCH_QUEUE_LENGTH),
+											new ThreadFactoryBuilder()
+												.setNameFormat("dric-frame-prefetch")
+												.setDaemon(true)
+												.build());
+	}
+	
+	public FrameCacheConfig getConfig() {
+		return m_config;
+	}
+	
+	/**
+	 * 주어진 비디오에서 지정된 시각의 프레임을 읽는다.
+	 * <p>
+	 * 캐싱된 프레임이 있으면 비디오 파일을 읽지 않고 바로 반환한다.
+	 *
+	 * @param video	프레임을 포함한 비디오
+	 * @param ts	프레임 캡쳐 시각
+	 * @return	인코딩된 카메라 프레임
+	 * @throws FrameNotFoundException	해당 시각의 프레임이 없는 경우.
+	 */
+	public EncodedFrame getFrame(Video video, long ts) throws FrameNotFoundException {
+		String cameraId = video.cameraId();
+		EncodedFrame cached = getIfPresent(cameraId, ts);
+		if ( cached != null ) {
+			return cached;
+		}
+		
+		boolean sequential = isSequentialMiss(cameraId, ts);
+		boolean prefetch = sequential && m_config.getPrefetchCount() > 0 && m_config.getMaxBytes() > 0;
+		FStream<EncodedFrame> frames = video.encodedFrames(ts, prefetch ? video.stop() : ts);
+		boolean handedOver = false;
+		try {
+			FOption<EncodedFrame> first = frames.next();
+			if ( !first.isPresent() || first.getOrNull().ts() != ts ) {
+				throw new FrameNotFoundException(cameraId, ts);
+			}
+			EncodedFrame frame = first.getOrNull();
+			put(cameraId, ts, frame.jpeg());
+			
+			if ( prefetch ) {
+				handedOver = schedulePrefetch(cameraId, frames);
+			}
+			return frame;
+		}
+		finally {
+			if ( !handedOver ) {
+				Try.run(frames::close);
+			}
+		}
+	}
+	
+	/**
+	 * 캐싱된 프레임을 반환한다.
+	 *
+	 * @param cameraId	카메라 식별자
+	 * @param ts	프레임 캡쳐 시각
+	 * @return	캐싱된 프레임. 캐싱되지 않은 경우는 {@code null}.
+	 */
+	public EncodedFrame getIfPresent(String cameraId, long ts) {
+		byte[] jpeg = lookup(cameraId, ts);
+		if ( jpeg != null ) {
+			m_hitCount.incrementAndGet();
+			return new EncodedFrame(cameraId, jpeg, ts);
+		}
+		m_missCount.incrementAndGet();
+		return null;
+	}
+	
+	public void put(String cameraId, long ts, byte[] jpeg) {
+		long maxBytes = m_config.getMaxBytes();
+		if ( jpeg.length > maxBytes ) {
+			return;
+		}
+		
+		synchronized ( this ) {
+			byte[] prev = m_frames.put(new Key(cameraId, ts), jpeg);
+			m_totalBytes += jpeg.length - ((prev != null) ? prev.length : 0);
+			
+			Iterator<byte[]> iter = m_frames.values().iterator();
+			while ( m_totalBytes > maxBytes && iter.hasNext() ) {
+				m_totalBytes -= iter.next().length;
+				iter.remove();
+				m_evictCount.incrementAndGet();
+			}
+		}
+	}
+	
+	public synchronized void invalidate(String cameraId) {
+		Iterator<Map.Entry<Key,byte[]>> iter = m_frames.entrySet().iterator();
+		while ( iter.hasNext() ) {
+			Map.Entry<Key,byte[]> entry = iter.next();
+			if ( entry.getKey().m_cameraId.equals(cameraId) ) {
+				m_totalBytes -= entry.getValue().length;
+				iter.remove();
+			}
+		}
+		m_lastMisses.remove(cameraId);
+	}
+	
+	public long getHitCount() {
+		return m_hitCount.get();
+	}
+	
+	public long getMissCount() {
+		return m_missCount.get();
+	}
+	
+	public long getEvictionCount() {
+		return m_evictCount.get();
+	}
+	
+	public long getPrefetchCount() {
+		return m_prefetchCount.get();
+	}
+	
+	public double getHitRatio() {
+		long hits = m_hitCount.get();
+		long total = hits + m_missCount.get();
+		return (total > 0) ? (double)hits / total : 0;
+	}
+	
+	public synchronized int getFrameCount() {
+		return m_frames.size();
+	}
+	
+	public synchronized long getTotalBytes() {
+		return m_totalBytes;
+	}
+	
+	@Override
+	public void close() {
+		m_prefetcher.shutdownNow();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("FrameCache[frames=%d, size=%dKB, hit_ratio=%.2f, hits=%d, misses=%d, "
+							+ "evictions=%d, prefetched=%d]",
+							getFrameCount(), getTotalBytes() / 1024, getHitRatio(), getHitCount(),
+							getMissCount(), getEvictionCount(), getPrefetchCount());
+	}
+	
+	private synchronized byte[] lookup(String cameraId, long ts) {
+		return m_frames.get(new Key(cameraId, ts));
+	}
+	
+	private synchronized boolean contains(String cameraId, long ts) {
+		return m_frames.containsKey(new Key(cameraId, ts));
+	}
+	
+	private boolean isSequentialMiss(String cameraId, long ts) {
+		Long last = m_lastMisses.put(cameraId, ts);
+		if ( last == null ) {
+			return false;
+		}
+		
+		long gap = ts - last;
+		return gap > 0 && gap <= m_config.getSequentialGap();
+	}
+	
+	private boolean schedulePrefetch(String cameraId, FStream<EncodedFrame> frames) {
+		try {
+			m_prefetcher.execute(() -> prefetch(cameraId, frames));
+			return true;
+		}
+		catch ( RejectedExecutionException e ) {
+			// 이미 많은 prefetch 작업이 대기 중이면 이번 prefetch는 생략한다.
+			return false;
+		}
+	}
+	
+	private void prefetch(String cameraId, FStream<EncodedFrame> frames) {
+		try {
+			for ( int i =0; i < m_config.getPrefetchCount(); ++i ) {
+				FOption<EncodedFrame> next = frames.next();
+				if ( !next.isPresent() ) {
+					break;
+				}
+				
+				EncodedFrame frame = next.getOrNull();
+				if ( !contains(cameraId, frame.ts()) ) {
+					put(cameraId, frame.ts(), frame.jpeg());
+					m_prefetchCount.incrementAndGet();
+				}
+			}
+		}
+		catch ( Exception e ) {
+			s_logger.warn("fails to prefetch frames: camera={}, cause={}", cameraId, e.toString());
+		}
+		finally {
+			Try.run(frames::close);
+		}
+	}
+	
+	private static final class Key {
+		private final String m_cameraId;
+		private final long m_ts;
+		
+		Key(String cameraId, long ts) {
+			m_cameraId = cameraId;
+			m_ts = ts;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if ( this == obj ) {
+				return true;
+			}
+			else if ( obj == null || obj.getClass() != Key.class ) {
+				return false;
+			}
+			
+			Key other = (Key)obj;
+			return m_ts == other.m_ts && m_cameraId.equals(other.m_cameraId);
+		}
+		
+		@Override
+		public int hashCode() {
+			return m_cameraId.hashCode() * 31 + Long.hashCode(m_ts);
+		}
+	}
+}
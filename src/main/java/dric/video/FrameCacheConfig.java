@@ -0,0 +1,79 @@
+package dric.video;
+
+import java.util.Map;
+
+import utils.UnitUtils;
+
+/**
+ * 비디오 서버의 프레임 캐시 관련 설정 정보를 정의한다.
+ * <p>
+ * 설정 정보는 설정 파일의 'video.frame_cache' 항목에 아래와 같은 형식으로 기술된다.
+ * <pre>
+ * video:
+ *   frame_cache:
+ *     max_size_mb: 64
+ *     prefetch_count: 16
+ *     sequential_gap: 5s
+ * </pre>
+ * 'max_size_mb'가 0인 경우는 캐시를 사용하지 않는다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class FrameCacheConfig {
+	private static final int DEF_MAX_SIZE_MB = 64;
+	private static final int DEF_PREFETCH_COUNT = 16;
+	private static final long DEF_SEQUENTIAL_GAP = 5 * 1000;
+	
+	private final long m_maxBytes;
+	private final int m_prefetchCount;
+	private final long m_sequentialGap;
+	
+	private FrameCacheConfig(long maxBytes, int prefetchCount, long sequentialGap) {
+		m_maxBytes = maxBytes;
+		m_prefetchCount = prefetchCount;
+		m_sequentialGap = sequentialGap;
+	}
+	
+	/**
+	 * 주어진 'frame_cache' 설정 항목에서 프레임 캐시 설정 정보를 읽는다.
+	 * 생략된 항목은 기본 값을 사용한다.
+	 */
+	public static FrameCacheConfig from(Map<String,Object> cacheConfig) {
+		int maxSizeMb = Configs.getInt(cacheConfig, "max_size_mb", DEF_MAX_SIZE_MB);
+		int prefetchCount = Configs.getInt(cacheConfig, "prefetch_count", DEF_PREFETCH_COUNT);
+		long gap = Configs.getDuration(cacheConfig, "sequential_gap", DEF_SEQUENTIAL_GAP);
+		
+		if ( maxSizeMb < 0 ) {
+			throw new IllegalArgumentException("invalid frame_cache.max_size_mb: " + maxSizeMb);
+		}
+		
+		return new FrameCacheConfig(maxSizeMb * 1024L * 1024L, Math.max(0, prefetchCount), gap);
+	}
+	
+	/**
+	 * 캐시에 저장할 수 있는 JPEG 이미지들의 최대 크기 합 (byte)
+	 */
+	public long getMaxBytes() {
+		return m_maxBytes;
+	}
+	
+	/**
+	 * 연속된 캐시 실패시 미리 읽어 둘 후속 프레임 수
+	 */
+	public int getPrefetchCount() {
+		return m_prefetchCount;
+	}
+	
+	/**
+	 * 두 캐시 실패를 연속된 접근으로 간주하는 최대 시각 차이 (ms)
+	 */
+	public long getSequentialGap() {
+		return m_sequentialGap;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("max_size=%dMB, prefetch_count=%d, sequential_gap=%s",
+							m_maxBytes / (1024*1024), m_prefetchCount, UnitUtils.toSecondString(m_sequentialGap));
+	}
+}
@@ -0,0 +1,487 @@
+package dric.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+import utils.Utilities;
+import utils.func.FOption;
+import utils.func.Try;
+import utils.stream.FStream;
+import utils.stream.FStreams.AbstractFStream;
+
+/**
+ * 카메라별 tail 프레임들을 로컬 디스크에 저장하는 추가 전용(append-only) 프레임 로그를 정의한다.
+ * <p>
+ * 프레임 로그는 카메라별 디렉토리('{root}/{camera-id}') 아래에 일정 시간 단위로 나뉜
+ * 세그먼트들로 구성된다. 각 세그먼트는 JPEG 이미지들을 차례로 이어 붙인 데이터 파일
+ * ('{시작 시각}.dat')과 프레임별 고정 크기 레코드 헤더들을 차례로 기록한 헤더 파일
+ * ('{시작 시각}.hdr')로 구성되며, 레코드 헤더의 형식은 아래와 같다.
+ * <pre>
+ * long		캡쳐 시각 (epoch millis, 0이면 아직 기록되지 않은 레코드)
+ * long		데이터 파일 내 JPEG 이미지 시작 위치
+ * int		JPEG 이미지 크기
+ * </pre>
+ * 헤더 파일은 기록시 memory-map되어 미리 할당된 영역에 차례로 기록된다. 검색시에는
+ * 헤더 파일 전체를 읽지 않고, 레코드 헤더들을 {@value #BLOCK_RECORDS}개 단위의 블럭으로 읽으면서
+ * 헤더 파일에서 바로 이진 탐색한다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class FrameLog {
+	private static final Logger s_logger = LoggerFactory.getLogger(FrameLog.class);
+	
+	private static final String DATA_SUFFIX = ".dat";
+	private static final String HEADER_SUFFIX = ".hdr";
+	private static final int RECORD_SIZE = 20;		// ts(8) + offset(8) + length(4)
+	private static final int BLOCK_RECORDS = 64;
+	
+	private final String m_cameraId;
+	private final File m_dir;
+	
+	/**
+	 * 주어진 카메라의 프레임 로그 검색 객체를 생성한다.
+	 *
+	 * @param rootDir	프레임 로그 최상위 디렉토리
+	 * @param cameraId	카메라 식별자
+	 */
+	public FrameLog(File rootDir, String cameraId) {
+		Utilities.checkNotNullArgument(rootDir);
+		Utilities.checkNotNullArgument(cameraId);
+		
+		m_cameraId = cameraId;
+		m_dir = new File(rootDir, cameraId);
+	}
+	
+	/**
+	 * 주어진 시각에 캡쳐된 프레임을 읽는다.
+	 *
+	 * @param ts	캡쳐 시각
+	 * @return	프레임. 해당 시각의 프레임이 없는 경우는 {@link FOption#empty()}.
+	 * @throws IOException	프레임 로그 접근 중 오류가 발생된 경우.
+	 */
+	public FOption<EncodedFrame> getFrame(long ts) throws IOException {
+		List<EncodedFrame> found = getFrames(new long[]{ts});
+		return found.isEmpty() ? FOption.empty() : FOption.of(found.get(0));
+	}
+	
+	/**
+	 * 주어진 시각들에 캡쳐된 프레임들을 읽는다.
+	 *
+	 * @param tsList	오름차순으로 정렬된 캡쳐 시각 배열
+	 * @return	찾은 프레임들의 리스트 (캡쳐 시각 순서)
+	 * @throws IOException	프레임 로그 접근 중 오류가 발생된 경우.
+	 */
+	public List<EncodedFrame> getFrames(long[] tsList) throws IOException {
+		List<EncodedFrame> found = Lists.newArrayList();
+		long[] starts = listSegments();
+		
+		int idx = 0;
+		while ( idx < tsList.length ) {
+			int segIdx = floorSegment(starts, tsList[idx]);
+			if ( segIdx < 0 ) {
+				++idx;
+				continue;
+			}
+			
+			long segStop = (segIdx + 1 < starts.length) ? starts[segIdx+1] : Long.MAX_VALUE;
+			try ( Segment seg = Segment.open(m_dir, starts[segIdx]) ) {
+				for (; idx < tsList.length && tsList[idx] < segStop; ++idx ) {
+					int recNo = seg.ceiling(tsList[idx]);
+					if ( recNo < seg.m_count && seg.timestamp(recNo) == tsList[idx] ) {
+						found.add(new EncodedFrame(m_cameraId, seg.read(recNo), tsList[idx]));
+					}
+				}
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * 주어진 구간에 캡쳐된 프레임들을 캡쳐 시각 순서대로 읽는 스트림을 반환한다.
+	 * 반환된 스트림은 사용 후 반드시 close되어야 한다.
+	 *
+	 * @param start	검색 구간 시작 시각
+	 * @param stop	검색 구간 종료 시각
+	 * @return	프레임 스트림
+	 */
+	public FStream<EncodedFrame> frames(long start, long stop) throws IOException {
+		return new FrameStream(listSegments(), start, stop);
+	}
+	
+	/**
+	 * 세그먼트 시작 시각들을 오름차순으로 반환한다.
+	 */
+	private long[] listSegments() {
+		File[] files = m_dir.listFiles((dir, name) -> name.endsWith(HEADER_SUFFIX));
+		if ( files == null ) {
+			return new long[0];
+		}
+		
+		long[] starts = new long[files.length];
+		int count = 0;
+		for ( File file: files ) {
+			FOption<Long> start = parseSegmentStart(file.getName());
+			if ( start.isPresent() ) {
+				starts[count++] = start.getOrNull();
+			}
+		}
+		starts = Arrays.copyOf(starts, count);
+		Arrays.sort(starts);
+		return starts;
+	}
+	
+	private static FOption<Long> parseSegmentStart(String fname) {
+		int idx = fname.lastIndexOf('.');
+		try {
+			return FOption.of(Long.parseLong(fname.substring(0, idx)));
+		}
+		catch ( NumberFormatException e ) {
+			return FOption.empty();
+		}
+	}
+	
+	private static int floorSegment(long[] starts, long ts) {
+		int idx = Arrays.binarySearch(starts, ts);
+		return (idx >= 0) ? idx : -(idx + 1) - 1;
+	}
+	
+	private static File getHeaderFile(File dir, long start) {
+		return new File(dir, start + HEADER_SUFFIX);
+	}
+	
+	private static File getDataFile(File dir, long start) {
+		return new File(dir, start + DATA_SUFFIX);
+	}
+	
+	private class FrameStream extends AbstractFStream<EncodedFrame> {
+		private final long[] m_starts;
+		private final long m_stop;
+		private int m_segIdx;
+		private Segment m_segment = null;
+		private int m_recNo;
+		private long m_cursorTs;
+		
+		FrameStream(long[] starts, long start, long stop) {
+			m_starts = starts;
+			m_stop = stop;
+			m_segIdx = Math.max(0, floorSegment(starts, start));
+			m_cursorTs = start;
+		}
+		
+		@Override
+		protected void closeInGuard() throws Exception {
+			if ( m_segment != null ) {
+				m_segment.close();
+				m_segment = null;
+			}
+		}
+		
+		@Override
+		public FOption<EncodedFrame> next() {
+			try {
+				while ( true ) {
+					if ( m_segment == null ) {
+						if ( m_segIdx >= m_starts.length || m_starts[m_segIdx] > m_stop ) {
+							return FOption.empty();
+						}
+						m_segment = Segment.open(m_dir, m_starts[m_segIdx]);
+						m_recNo = m_segment.ceiling(m_cursorTs);
+					}
+					
+					if ( m_recNo < m_segment.m_count ) {
+						long ts = m_segment.timestamp(m_recNo);
+						if ( ts > m_stop ) {
+							return FOption.empty();
+						}
+						
+						byte[] jpeg = m_segment.read(m_recNo++);
+						m_cursorTs = ts + 1;
+						return FOption.of(new EncodedFrame(m_cameraId, jpeg, ts));
+					}
+					
+					m_segment.close();
+					m_segment = null;
+					++m_segIdx;
+				}
+			}
+			catch ( IOException e ) {
+				throw new IllegalStateException("fails to read frame log: camera=" + m_cameraId
+												+ ", cause=" + e, e);
+			}
+		}
+	}
+	
+	/**
+	 * 읽기용으로 열린 하나의 세그먼트.
+	 * <p>
+	 * 기록 중인 세그먼트도 읽을 수 있도록, 열린 시점까지 기록이 완료된 레코드들만 대상으로 한다.
+	 * 세그먼트 파일이 읽는 중에도 삭제될 수 있도록 읽기에는 memory-map을 사용하지 않는다.
+	 * 레코드 헤더는 블럭 단위로 읽으며 마지막으로 읽은 블럭을 재사용하기 때문에, 이진 탐색은
+	 * 탐색 단계마다 블럭 하나만 읽고 차례로 읽는 경우는 블럭마다 한번만 읽는다.
+	 */
+	private static final class Segment implements AutoCloseable {
+		private final FileChannel m_headerChannel;
+		private final FileChannel m_data;
+		private final int m_count;
+		private final ByteBuffer m_block = ByteBuffer.allocate(BLOCK_RECORDS * RECORD_SIZE);
+		private int m_blockNo = -1;		// m_block에 적재된 블럭 번호
+		
+		private Segment(FileChannel headers, FileChannel data) throws IOException {
+			m_headerChannel = headers;
+			m_data = data;
+			
+			// 레코드 헤더의 캡쳐 시각은 마지막에 기록되므로, 0이 아닌 레코드들만 기록이 완료된 것이다.
+			int low = 0;
+			int high = (int)Math.min(Integer.MAX_VALUE, headers.size() / RECORD_SIZE);
+			while ( low < high ) {
+				int mid = (low + high) >>> 1;
+				if ( timestamp(mid) != 0 ) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			m_count = low;
+			
+			// 기록 중인 블럭을 읽었을 수 있으므로, 이후에는 블럭을 다시 읽도록 한다.
+			m_blockNo = -1;
+		}
+		
+		static Segment open(File dir, long start) throws IOException {
+			FileChannel headers = FileChannel.open(getHeaderFile(dir, start).toPath(), StandardOpenOption.READ);
+			try {
+				FileChannel data = FileChannel.open(getDataFile(dir, start).toPath(), StandardOpenOption.READ);
+				try {
+					return new Segment(headers, data);
+				}
+				catch ( IOException e ) {
+					Try.run(data::close);
+					throw e;
+				}
+			}
+			catch ( IOException e ) {
+				Try.run(headers::close);
+				throw e;
+			}
+		}
+		
+		long timestamp(int recNo) throws IOException {
+			return m_block.getLong(loadBlock(recNo));
+		}
+		
+		/**
+		 * 주어진 시각 이후에 캡쳐된 첫번째 레코드 번호를 반환한다.
+		 * 그런 레코드가 없는 경우는 레코드 수를 반환한다.
+		 */
+		int ceiling(long ts) throws IOException {
+			int low = 0;
+			int high = m_count;
+			while ( low < high ) {
+				int mid = (low + high) >>> 1;
+				if ( timestamp(mid) < ts ) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+		
+		byte[] read(int recNo) throws IOException {
+			int pos = loadBlock(recNo);
+			long offset = m_block.getLong(pos + 8);
+			int length = m_block.getInt(pos + 16);
+			
+			ByteBuffer buf = ByteBuffer.allocate(length);
+			while ( buf.hasRemaining() ) {
+				if ( m_data.read(buf, offset + buf.position()) < 0 ) {
+					throw new IOException("truncated frame log data: offset=" + offset + ", length=" + length);
+				}
+			}
+			return buf.array();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				m_data.close();
+			}
+			finally {
+				m_headerChannel.close();
+			}
+		}
+		
+		/**
+		 * 주어진 레코드가 포함된 블럭을 읽고, 블럭 내 해당 레코드 헤더의 위치를 반환한다.
+		 */
+		private int loadBlock(int recNo) throws IOException {
+			int blockNo = recNo / BLOCK_RECORDS;
+			if ( blockNo != m_blockNo ) {
+				m_block.clear();
+				long pos = (long)blockNo * BLOCK_RECORDS * RECORD_SIZE;
+				while ( m_block.hasRemaining() ) {
+					if ( m_headerChannel.read(m_block, pos + m_block.position()) < 0 ) {
+						break;
+					}
+				}
+				m_blockNo = blockNo;
+			}
+			
+			return (recNo % BLOCK_RECORDS) * RECORD_SIZE;
+		}
+	}
+	
+	/**
+	 * 한 카메라의 프레임들을 프레임 로그에 추가하는 객체.
+	 * <p>
+	 * 첫번째 프레임의 캡쳐 시각으로부터 'rolloverInterval'이 지나면 새 세그먼트를 시작하고,
+	 * 이때 시작 시각이 'retention' 이전인 오래된 세그먼트들을 삭제한다.
+	 */
+	public static final class Writer implements AutoCloseable {
+		private static final int HEADER_GROW_COUNT = 4096;
+		
+		private final File m_dir;
+		private final long m_rolloverInterval;
+		private final long m_retention;
+		
+		private long m_segStart = -1;
+		private FileChannel m_data;
+		private FileChannel m_headerChannel;
+		private MappedByteBuffer m_headers;
+		private long m_dataOffset;
+		private int m_count;
+		private long m_lastTs = 0;
+		
+		/**
+		 * 프레임 로그 기록 객체를 생성한다.
+		 *
+		 * @param rootDir	프레임 로그 최상위 디렉토리
+		 * @param cameraId	카메라 식별자
+		 * @param rolloverInterval	세그먼트 하나가 담는 최대 시간 (ms)
+		 * @param retention	세그먼트 유지 시간 (ms)
+		 */
+		public Writer(File rootDir, String cameraId, long rolloverInterval, long retention) throws IOException {
+			Utilities.checkArgument(rolloverInterval > 0, "invalid rollover interval: " + rolloverInterval);
+			Utilities.checkArgument(retention >= rolloverInterval, "retention is shorter than rollover interval: "
+																	+ retention);
+			
+			m_dir = new File(rootDir, cameraId);
+			m_rolloverInterval = rolloverInterval;
+			m_retention = retention;
+			
+			if ( !m_dir.isDirectory() && !m_dir.mkdirs() ) {
+				throw new IOException("fails to create frame log directory: " + m_dir);
+			}
+		}
+		
+		/**
+		 * 주어진 프레임을 추가한다.
+		 * 캡쳐 시각이 이전 프레임보다 늦지 않은 프레임은 무시된다.
+		 *
+		 * @param ts	캡쳐 시각
+		 * @param jpeg	JPEG 이미지
+		 */
+		public synchronized void append(long ts, byte[] jpeg) throws IOException {
+			if ( ts <= m_lastTs ) {
+				return;
+			}
+			if ( m_segStart < 0 || ts - m_segStart >= m_rolloverInterval ) {
+				rollover(ts);
+			}
+			
+			long offset = m_dataOffset;
+			ByteBuffer buf = ByteBuffer.wrap(jpeg);
+			while ( buf.hasRemaining() ) {
+				m_data.write(buf);
+			}
+			m_dataOffset += jpeg.length;
+			
+			if ( (m_count + 1) * RECORD_SIZE > m_headers.capacity() ) {
+				m_headers = mapHeaders(m_headers.capacity() + HEADER_GROW_COUNT * RECORD_SIZE);
+			}
+			
+			// 읽는 쪽에서 기록 완료 여부를 판단할 수 있도록 캡쳐 시각은 마지막에 기록한다.
+			int pos = m_count * RECORD_SIZE;
+			m_headers.putLong(pos + 8, offset);
+			m_headers.putInt(pos + 16, jpeg.length);
+			m_headers.putLong(pos, ts);
+			
+			++m_count;
+			m_lastTs = ts;
+		}
+		
+		@Override
+		public synchronized void close() throws IOException {
+			closeSegment();
+		}
+		
+		private void rollover(long ts) throws IOException {
+			closeSegment();
+			
+			m_segStart = ts;
+			m_data = FileChannel.open(getDataFile(m_dir, ts).toPath(), StandardOpenOption.CREATE,
+										StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			m_headerChannel = FileChannel.open(getHeaderFile(m_dir, ts).toPath(), StandardOpenOption.CREATE,
+												StandardOpenOption.READ, StandardOpenOption.WRITE,
+												StandardOpenOption.TRUNCATE_EXISTING);
+			m_headers = mapHeaders(HEADER_GROW_COUNT * RECORD_SIZE);
+			m_dataOffset = 0;
+			m_count = 0;
+			
+			purgeSegments(ts - m_retention);
+		}
+		
+		private MappedByteBuffer mapHeaders(int size) throws IOException {
+			// 파일 크기보다 큰 영역을 map하면 파일이 늘어나고 늘어난 영역은 0으로 채워진다.
+			return m_headerChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+		
+		private void closeSegment() throws IOException {
+			if ( m_segStart < 0 ) {
+				return;
+			}
+			
+			try {
+				m_headers.force();
+				m_data.force(false);
+			}
+			finally {
+				m_headers = null;
+				Try.run(m_data::close);
+				Try.run(m_headerChannel::close);
+				m_segStart = -1;
+			}
+		}
+		
+		private void purgeSegments(long expired) {
+			// 검색 대상에서 먼저 제외되도록 헤더 파일을 데이터 파일보다 먼저 삭제한다.
+			for ( String suffix: new String[]{HEADER_SUFFIX, DATA_SUFFIX} ) {
+				File[] files = m_dir.listFiles((dir, name) -> name.endsWith(suffix));
+				if ( files == null ) {
+					return;
+				}
+				
+				for ( File file: files ) {
+					FOption<Long> start = parseSegmentStart(file.getName());
+					if ( start.isPresent() && start.getOrNull() < expired && !file.delete() ) {
+						// 다른 프로세스가 사용 중인 경우 등은 다음 rollover시 다시 시도한다.
+						s_logger.debug("fails to delete frame log segment file: {}", file);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package dric.video;
+
+import java.util.Map;
+
+import utils.UnitUtils;
+
+/**
+ * 비디오 서버의 gRPC 서버 실행 관련 설정 정보를 정의한다.
+ * <p>
+ * 설정 정보는 설정 파일의 'grpc' 항목에 아래와 같은 형식으로 기술된다.
+ * <pre>
+ * grpc:
+ *   boss_threads: 1
+ *   worker_threads: 0
+ *   call_threads: 8
+ *   video_threads: 8
+ *   video_queue_length: 128
+ *   max_inbound_message_size_mb: 4
+ *   max_concurrent_calls_per_connection: 64
+ *   keepalive_time: 60s
+ *   keepalive_timeout: 20s
+ *   permit_keepalive_time: 30s
+ * </pre>
+ * 'worker_threads'가 0인 경우는 Netty의 기본 쓰레드 수(CPU 코어 수의 두 배)를 사용한다.
+ * 'call_threads'는 카메라 정보 조회 등 가벼운 호출을 처리하는 쓰레드 수이고, 'video_threads'와
+ * 'video_queue_length'는 프레임 검색 등 블로킹 작업을 처리하는 쓰레드 수와 대기 요청 수이다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class GrpcServerConfig {
+	private static final int DEF_BOSS_THREADS = 1;
+	private static final int DEF_WORKER_THREADS = 0;
+	private static final int DEF_CALL_THREADS = 8;
+	private static final int DEF_VIDEO_THREADS = 8;
+	private static final int DEF_VIDEO_QUEUE_LENGTH = 128;
+	private static final int DEF_MAX_INBOUND_MESSAGE_SIZE_MB = 4;
+	private static final int DEF_MAX_CONCURRENT_CALLS = 64;
+	private static final long DEF_KEEPALIVE_TIME = 60 * 1000;
+	private static final long DEF_KEEPALIVE_TIMEOUT = 20 * 1000;
+	private static final long DEF_PERMIT_KEEPALIVE_TIME = 30 * 1000;
+	
+	private final int m_bossThreads;
+	private final int m_workerThreads;
+	private final int m_callThreads;
+	private final int m_videoThreads;
+	private final int m_videoQueueLength;
+	private final int m_maxInboundMessageSize;
+	private final int m_maxConcurrentCalls;
+	private final long m_keepAliveTime;
+	private final long m_keepAliveTimeout;
+	private final long m_permitKeepAliveTime;
+	
+	private GrpcServerConfig(int bossThreads, int workerThreads, int callThreads, int videoThreads,
+							int videoQueueLength, int maxInboundMessageSize, int maxConcurrentCalls,
+							long keepAliveTime, long keepAliveTimeout, long permitKeepAliveTime) {
+		m_bossThreads = bossThreads;
+		m_workerThreads = workerThreads;
+		m_callThreads = callThreads;
+		m_videoThreads = videoThreads;
+		m_videoQueueLength = videoQueueLength;
+		m_maxInboundMessageSize = maxInboundMessageSize;
+		m_maxConcurrentCalls = maxConcurrentCalls;
+		m_keepAliveTime = keepAliveTime;
+		m_keepAliveTimeout = keepAliveTimeout;
+		m_permitKeepAliveTime = permitKeepAliveTime;
+	}
+	
+	/**
+	 * 주어진 'grpc' 설정 항목에서 gRPC 서버 설정 정보를 읽는다.
+	 * 생략된 항목은 기본 값을 사용한다.
+	 */
+	public static GrpcServerConfig from(Map<String,Object> grpcConfig) {
+		int bossThreads = Configs.getInt(grpcConfig, "boss_threads", DEF_BOSS_THREADS);
+		int workerThreads = Configs.getInt(grpcConfig, "worker_threads", DEF_WORKER_THREADS);
+		int callThreads = Configs.getInt(grpcConfig, "call_threads", DEF_CALL_THREADS);
+		int videoThreads = Configs.getInt(grpcConfig, "video_threads", DEF_VIDEO_THREADS);
+		int videoQueueLength = Configs.getInt(grpcConfig, "video_queue_length", DEF_VIDEO_QUEUE_LENGTH);
+		int maxInboundMb = Configs.getInt(grpcConfig, "max_inbound_message_size_mb",
+											DEF_MAX_INBOUND_MESSAGE_SIZE_MB);
+		int maxCalls = Configs.getInt(grpcConfig, "max_concurrent_calls_per_connection",
+										DEF_MAX_CONCURRENT_CALLS);
+		long keepAliveTime = Configs.getDuration(grpcConfig, "keepalive_time", DEF_KEEPALIVE_TIME);
+		long keepAliveTimeout = Configs.getDuration(grpcConfig, "keepalive_timeout", DEF_KEEPALIVE_TIMEOUT);
+		long permitKeepAliveTime = Configs.getDuration(grpcConfig, "permit_keepalive_time",
+														DEF_PERMIT_KEEPALIVE_TIME);
+		
+		if ( bossThreads <= 0 ) {
+			throw new IllegalArgumentException("invalid grpc.boss_threads: " + bossThreads);
+		}
+		if ( callThreads <= 0 ) {
+			throw new IllegalArgumentException("invalid grpc.call_threads: " + callThreads);
+		}
+		if ( videoThreads <= 0 ) {
+			throw new IllegalArgumentException("invalid grpc.video_threads: " + videoThreads);
+		}
+		if ( maxInboundMb <= 0 ) {
+			throw new IllegalArgumentException("invalid grpc.max_inbound_message_size_mb: " + maxInboundMb);
+		}
+		if ( maxCalls <= 0 ) {
+			throw new IllegalArgumentException("invalid grpc.max_concurrent_calls_per_connection: " + maxCalls);
+		}
+		
+		return new GrpcServerConfig(bossThreads, Math.max(0, workerThreads), callThreads, videoThreads,
+									Math.max(1, videoQueueLength), maxInboundMb * 1024 * 1024, maxCalls,
+									keepAliveTime, keepAliveTimeout, permitKeepAliveTime);
+	}
+	
+	/**
+	 * 연결 요청을 수락하는 Netty boss 이벤트 루프 쓰레드 수
+	 */
+	public int getBossThreads() {
+		return m_bossThreads;
+	}
+	
+	/**
+	 * 소켓 입출력을 처리하는 Netty worker 이벤트 루프 쓰레드 수. 0이면 Netty 기본 값을 사용한다.
+	 */
+	public int getWorkerThreads() {
+		return m_workerThreads;
+	}
+	
+	/**
+	 * 가벼운 gRPC 호출들을 처리하는 쓰레드 수
+	 */
+	public int getCallThreads() {
+		return m_callThreads;
+	}
+	
+	/**
+	 * 프레임 검색 등 블로킹 비디오 작업을 처리하는 쓰레드 수
+	 */
+	public int getVideoThreads() {
+		return m_videoThreads;
+	}
+	
+	/**
+	 * 비디오 작업 쓰레드들이 모두 사용 중일 때 대기할 수 있는 최대 요청 수
+	 */
+	public int getVideoQueueLength() {
+		return m_videoQueueLength;
+	}
+	
+	/**
+	 * 수신 메시지의 최대 크기 (byte)
+	 */
+	public int getMaxInboundMessageSize() {
+		return m_maxInboundMessageSize;
+	}
+	
+	public int getMaxConcurrentCallsPerConnection() {
+		return m_maxConcurrentCalls;
+	}
+	
+	public long getKeepAliveTime() {
+		return m_keepAliveTime;
+	}
+	
+	public long getKeepAliveTimeout() {
+		return m_keepAliveTimeout;
+	}
+	
+	/**
+	 * 클라이언트가 보내는 keepalive ping의 최소 허용 간격 (ms)
+	 */
+	public long getPermitKeepAliveTime() {
+		return m_permitKeepAliveTime;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("boss=%d, worker=%d, call_threads=%d, video_threads=%d, video_queue=%d, "
+							+ "max_inbound=%dMB, max_calls=%d, keepalive=%s",
+							m_bossThreads, m_workerThreads, m_callThreads, m_videoThreads, m_videoQueueLength,
+							m_maxInboundMessageSize / (1024*1024), m_maxConcurrentCalls,
+							UnitUtils.toSecondString(m_keepAliveTime));
+	}
+}
@@ -0,0 +1,343 @@
+package dric.video;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import utils.jdbc.JdbcProcessor;
+
+/**
+ * {@link JdbcProcessor}를 통해 생성된 JDBC 연결들을 재사용하기 위한 연결 pool을 정의한다.
+ * <p>
+ * {@link #connect()}가 반환하는 연결 객체의 {@link Connection#close()}를 호출하면
+ * 물리적인 연결은 닫히지 않고 pool에 반환된다. 또한 연결 별로 최근에 사용된
+ * {@link PreparedStatement}들을 캐싱하기 때문에 동일한 SQL 문에 대해서는
+ * {@link Connection#prepareStatement(String)}가 기존 statement 객체를 재사용한다.
+ * 캐싱된 statement의 {@link PreparedStatement#close()}는 인자 값과 fetch size 등의 설정만 초기화한다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class JdbcConnectionPool implements AutoCloseable {
+	private static final Logger s_logger = LoggerFactory.getLogger(JdbcConnectionPool.class);
+	private static final long VALIDATION_IDLE_TIME = 30 * 1000;
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+	
+	private final JdbcProcessor m_jdbc;
+	private final JdbcPoolConfig m_config;
+	private final Semaphore m_permits;
+	private final ArrayDeque<PooledConnection> m_idles = new ArrayDeque<>();
+	private final ScheduledExecutorService m_evictor;
+	private volatile boolean m_closed = false;
+	
+	public JdbcConnectionPool(JdbcProcessor jdbc, JdbcPoolConfig config) {
+		m_jdbc = jdbc;
+		m_config = config;
+		m_permits = new Semaphore(config.getMaxPoolSize(), true);
+		
+		m_evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+																.setNameFormat("dric-jdbc-evictor")
+																.setDaemon(true)
+																.build());
+		long period = Math.max(config.getIdleTimeout() / 2, 1000);
+		m_evictor.scheduleWithFixedDelay(this::evictIdleConnections, period, period, TimeUnit.MILLISECONDS);
+	}
+	
+	public JdbcProcessor getJdbcProcessor() {
+		return m_jdbc;
+	}
+	
+	public JdbcPoolConfig getConfig() {
+		return m_config;
+	}
+	
+	/**
+	 * Pool에서 JDBC 연결을 할당받는다.
+	 * <p>
+	 * 모든 연결이 사용 중이고 pool이 최대 크기에 도달한 경우에는 'connect_timeout'
+	 * 동안 대기한 후 {@link SQLException}을 발생시킨다.
+	 *
+	 * @return	JDBC 연결 객체
+	 * @throws SQLException	연결 할당에 실패한 경우.
+	 */
+	public Connection connect() throws SQLException {
+		if ( m_closed ) {
+			throw new SQLException("connection pool has been closed");
+		}
+		
+		try {
+			if ( !m_permits.tryAcquire(m_config.getConnectTimeout(), TimeUnit.MILLISECONDS) ) {
+				throw new SQLException("connection pool exhausted: max_pool_size=" + m_config.getMaxPoolSize());
+			}
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("interrupted while waiting for a connection");
+		}
+		
+		try {
+			PooledConnection pooled;
+			while ( (pooled = pollIdle()) != null ) {
+				if ( isUsable(pooled) ) {
+					return pooled.lease();
+				}
+				pooled.closePhysically();
+			}
+			
+			return new PooledConnection(m_jdbc.connect()).lease();
+		}
+		catch ( SQLException | RuntimeException e ) {
+			m_permits.release();
+			throw e;
+		}
+	}
+	
+	public synchronized int getIdleCount() {
+		return m_idles.size();
+	}
+	
+	public int getActiveCount() {
+		return m_config.getMaxPoolSize() - m_permits.availablePermits();
+	}
+	
+	@Override
+	public void close() {
+		m_closed = true;
+		m_evictor.shutdown();
+		
+		PooledConnection pooled;
+		while ( (pooled = pollIdle()) != null ) {
+			pooled.closePhysically();
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("JdbcConnectionPool[active=%d, idle=%d, %s]",
+							getActiveCount(), getIdleCount(), m_config);
+	}
+	
+	private synchronized PooledConnection pollIdle() {
+		return m_idles.pollFirst();
+	}
+	
+	private boolean isUsable(PooledConnection pooled) {
+		try {
+			if ( pooled.m_conn.isClosed() ) {
+				return false;
+			}
+			if ( System.currentTimeMillis() - pooled.m_lastUsed > VALIDATION_IDLE_TIME ) {
+				return pooled.m_conn.isValid(VALIDATION_TIMEOUT_SECONDS);
+			}
+			return true;
+		}
+		catch ( SQLException e ) {
+			return false;
+		}
+	}
+	
+	private void giveBack(PooledConnection pooled) {
+		try {
+			boolean reusable = !m_closed && !pooled.m_conn.isClosed();
+			if ( reusable && !pooled.m_conn.getAutoCommit() ) {
+				pooled.m_conn.rollback();
+				pooled.m_conn.setAutoCommit(true);
+			}
+			
+			if ( reusable ) {
+				pooled.m_lastUsed = System.currentTimeMillis();
+				synchronized ( this ) {
+					m_idles.addFirst(pooled);
+				}
+			}
+			else {
+				pooled.closePhysically();
+			}
+		}
+		catch ( SQLException e ) {
+			pooled.closePhysically();
+		}
+		finally {
+			m_permits.release();
+		}
+	}
+	
+	private void evictIdleConnections() {
+		long expired = System.currentTimeMillis() - m_config.getIdleTimeout();
+		synchronized ( this ) {
+			for ( Iterator<PooledConnection> iter = m_idles.iterator(); iter.hasNext(); ) {
+				PooledConnection pooled = iter.next();
+				if ( pooled.m_lastUsed < expired ) {
+					iter.remove();
+					pooled.closePhysically();
+				}
+			}
+		}
+	}
+	
+	private final class PooledConnection {
+		private final Connection m_conn;
+		private final Map<String,PreparedStatement> m_stmtCache;
+		private volatile Connection m_leased;	// 현재 할당된 연결의 proxy 객체
+		private long m_lastUsed;
+		
+		@SuppressWarnings("serial")
+		PooledConnection(Connection conn) {
+			m_conn = conn;
+			m_lastUsed = System.currentTimeMillis();
+			
+			int cacheSize = m_config.getStatementCacheSize();
+			m_stmtCache = new LinkedHashMap<String,PreparedStatement>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String,PreparedStatement> eldest) {
+					if ( size() > cacheSize ) {
+						closeQuietly(eldest.getValue());
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+		
+		Connection lease() {
+			m_leased = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+													new Class<?>[] {Connection.class}, new LeaseHandler(this));
+			return m_leased;
+		}
+		
+		PreparedStatement prepareStatement(String sql) throws SQLException {
+			if ( m_config.getStatementCacheSize() == 0 ) {
+				return m_conn.prepareStatement(sql);
+			}
+			
+			PreparedStatement pstmt = m_stmtCache.get(sql);
+			if ( pstmt == null || pstmt.isClosed() ) {
+				pstmt = m_conn.prepareStatement(sql);
+				m_stmtCache.put(sql, pstmt);
+			}
+			return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+														new Class<?>[] {PreparedStatement.class},
+														new CachedStatementHandler(this, pstmt));
+		}
+		
+		void closePhysically() {
+			for ( PreparedStatement pstmt: m_stmtCache.values() ) {
+				closeQuietly(pstmt);
+			}
+			m_stmtCache.clear();
+			
+			try {
+				m_conn.close();
+			}
+			catch ( SQLException e ) {
+				s_logger.debug("fails to close a JDBC connection: cause={}", e.toString());
+			}
+		}
+	}
+	
+	private final class LeaseHandler implements InvocationHandler {
+		private final PooledConnection m_pooled;
+		private boolean m_closed = false;
+		
+		LeaseHandler(PooledConnection pooled) {
+			m_pooled = pooled;
+		}
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ( name.equals("close") ) {
+				if ( !m_closed ) {
+					m_closed = true;
+					giveBack(m_pooled);
+				}
+				return null;
+			}
+			else if ( name.equals("isClosed") ) {
+				return m_closed || m_pooled.m_conn.isClosed();
+			}
+			else if ( name.equals("equals") ) {
+				return proxy == args[0];
+			}
+			else if ( name.equals("hashCode") ) {
+				return System.identityHashCode(proxy);
+			}
+			else if ( name.equals("toString") ) {
+				return "Pooled" + m_pooled.m_conn;
+			}
+			
+			if ( m_closed ) {
+				throw new SQLException("connection has been returned to the pool");
+			}
+			if ( name.equals("prepareStatement") && args.length == 1 ) {
+				return m_pooled.prepareStatement((String)args[0]);
+			}
+			return invokeTarget(m_pooled.m_conn, method, args);
+		}
+	}
+	
+	private static final class CachedStatementHandler implements InvocationHandler {
+		private final PooledConnection m_pooled;
+		private final PreparedStatement m_pstmt;
+		
+		CachedStatementHandler(PooledConnection pooled, PreparedStatement pstmt) {
+			m_pooled = pooled;
+			m_pstmt = pstmt;
+		}
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch ( method.getName() ) {
+				case "close":
+					// 캐싱된 statement는 닫지 않고 다음 사용을 위해 인자 값과 실행 설정을 초기화한다.
+					if ( !m_pstmt.isClosed() ) {
+						m_pstmt.clearParameters();
+						m_pstmt.clearBatch();
+						m_pstmt.setFetchSize(0);
+						m_pstmt.setMaxRows(0);
+					}
+					return null;
+				case "getConnection":
+					return m_pooled.m_leased;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					return invokeTarget(m_pstmt, method, args);
+			}
+		}
+	}
+	
+	private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		}
+		catch ( InvocationTargetException e ) {
+			throw e.getCause();
+		}
+	}
+	
+	private static void closeQuietly(PreparedStatement pstmt) {
+		try {
+			pstmt.close();
+		}
+		catch ( SQLException ignored ) { }
+	}
+}
@@ -0,0 +1,79 @@
+package dric.video;
+
+import java.util.Map;
+
+import utils.UnitUtils;
+
+/**
+ * JDBC 연결 pool 관련 설정 정보를 정의한다.
+ * <p>
+ * 설정 정보는 설정 파일의 'jdbc' 항목에 아래와 같은 형식으로 기술된다.
+ * <pre>
+ * jdbc:
+ *   ...
+ *   max_pool_size: 8
+ *   idle_timeout: 5m
+ *   statement_cache_size: 32
+ *   connect_timeout: 30s
+ * </pre>
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class JdbcPoolConfig {
+	private static final int DEF_MAX_POOL_SIZE = 8;
+	private static final long DEF_IDLE_TIMEOUT = 5 * 60 * 1000;
+	private static final int DEF_STATEMENT_CACHE_SIZE = 32;
+	private static final long DEF_CONNECT_TIMEOUT = 30 * 1000;
+	
+	private final int m_maxPoolSize;
+	private final long m_idleTimeout;
+	private final int m_stmtCacheSize;
+	private final long m_connectTimeout;
+	
+	private JdbcPoolConfig(int maxPoolSize, long idleTimeout, int stmtCacheSize, long connectTimeout) {
+		m_maxPoolSize = maxPoolSize;
+		m_idleTimeout = idleTimeout;
+		m_stmtCacheSize = stmtCacheSize;
+		m_connectTimeout = connectTimeout;
+	}
+	
+	/**
+	 * 주어진 'jdbc' 설정 항목에서 연결 pool 설정 정보를 읽는다.
+	 * 생략된 항목은 기본 값을 사용한다.
+	 */
+	public static JdbcPoolConfig from(Map<String,Object> jdbcConfig) {
+		int maxPoolSize = Configs.getInt(jdbcConfig, "max_pool_size", DEF_MAX_POOL_SIZE);
+		long idleTimeout = Configs.getDuration(jdbcConfig, "idle_timeout", DEF_IDLE_TIMEOUT);
+		int stmtCacheSize = Configs.getInt(jdbcConfig, "statement_cache_size", DEF_STATEMENT_CACHE_SIZE);
+		long connectTimeout = Configs.getDuration(jdbcConfig, "connect_timeout", DEF_CONNECT_TIMEOUT);
+		
+		if ( maxPoolSize <= 0 ) {
+			throw new IllegalArgumentException("invalid jdbc.max_pool_size: " + maxPoolSize);
+		}
+		
+		return new JdbcPoolConfig(maxPoolSize, idleTimeout, Math.max(0, stmtCacheSize), connectTimeout);
+	}
+	
+	public int getMaxPoolSize() {
+		return m_maxPoolSize;
+	}
+	
+	public long getIdleTimeout() {
+		return m_idleTimeout;
+	}
+	
+	public int getStatementCacheSize() {
+		return m_stmtCacheSize;
+	}
+	
+	public long getConnectTimeout() {
+		return m_connectTimeout;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("max_pool_size=%d, idle_timeout=%s, statement_cache_size=%d, connect_timeout=%s",
+							m_maxPoolSize, UnitUtils.toSecondString(m_idleTimeout), m_stmtCacheSize,
+							UnitUtils.toSecondString(m_connectTimeout));
+	}
+}
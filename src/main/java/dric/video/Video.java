@@ -1,14 +1,17 @@
 package dric.video;
 
 import java.io.File;
+import java.util.List;
 
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.videoio.VideoCapture;
 import org.opencv.videoio.Videoio;
 
+import com.google.common.collect.Lists;
+
 import dric.type.CameraFrame;
+import dric.video.VideoDecoderPool.Decoder;
+import opencvj.JpegEncoder;
 import utils.LocalDateTimes;
 import utils.UnitUtils;
 import utils.func.FOption;
@@ -20,16 +23,32 @@ import utils.stream.FStreams.AbstractFStream;
  * @author Kang-Woo Lee (ETRI)
  */
 public final class Video implements Comparable<Video> {
+	// 색인을 이용한 일괄 검색시, 이동(seek) 대신 건너뛰며 읽을 최대 프레임 수
+	private static final int MAX_GRAB_FRAMES = 8;
+	
 	private final String m_cameraId;
 	private final long m_start;
 	private final long m_stop;
 	private final File m_videoFile;
+	private final JpegEncoder m_encoder;
+	private final VideoDecoderPool m_decoders;	// null이면 매번 파일을 새로 연다.
 	
 	public Video(String cameraId, long start, long stop, File videoFile) {
+		this(cameraId, start, stop, videoFile, JpegEncoder.DEFAULT);
+	}
+	
+	public Video(String cameraId, long start, long stop, File videoFile, JpegEncoder encoder) {
+		this(cameraId, start, stop, videoFile, encoder, null);
+	}
+	
+	public Video(String cameraId, long start, long stop, File videoFile, JpegEncoder encoder,
+					VideoDecoderPool decoders) {
 		m_cameraId = cameraId;
 		m_start = start;
 		m_stop = stop;
 		m_videoFile = videoFile;
+		m_encoder = encoder;
+		m_decoders = decoders;
 	}
 	
 	public String cameraId() {
@@ -49,16 +68,65 @@ public final class Video implements Comparable<Video> {
 	}
 	
 	public CameraFrame getFrame(long ts) throws FrameNotFoundException {
-		return frames(ts, ts).findFirst()
-							.getOrThrow(() -> new FrameNotFoundException(m_cameraId, ts));
+		// 스트림이 점유한 디코더를 반환하기 위해 반드시 close한다.
+		try ( FStream<CameraFrame> frames = frames(ts, ts) ) {
+			return frames.findFirst()
+						.getOrThrow(() -> new FrameNotFoundException(m_cameraId, ts));
+		}
+		catch ( FrameNotFoundException e ) {
+			throw e;
+		}
+		catch ( Exception e ) {
+			throw new IllegalStateException("fails to read a frame: ts=" + ts + ", cause=" + e, e);
+		}
 	}
 	
 	public FStream<CameraFrame> frames() {
-		return new CameraFrameStream(this, m_start, m_stop);
+		return frames(m_start, m_stop);
 	}
 	
 	public FStream<CameraFrame> frames(long start, long stop) {
-		return new CameraFrameStream(this, start, stop);
+		return encodedFrames(start, stop).map(EncodedFrame::toCameraFrame);
+	}
+	
+	/**
+	 * 주어진 구간의 프레임들을 JPEG 인코딩 결과 형태로 차례대로 읽는 스트림을 반환한다.
+	 */
+	public FStream<EncodedFrame> encodedFrames(long start, long stop) {
+		return new EncodedFrameStream(this, start, stop);
+	}
+	
+	/**
+	 * 주어진 시각들의 프레임들을 하나의 디코더로 파일 앞에서부터 차례대로 읽는다.
+	 * <p>
+	 * 요청 시각들은 오름차순으로 정렬되어 있어야 하며, 요청 시각에 캡쳐된 프레임이 없는 경우는
+	 * 결과에서 제외된다. 요청된 프레임들만 JPEG으로 인코딩되며, 요청 시각 사이의 프레임들은
+	 * 간격이 짧으면 변환 없이 건너뛰고 길면 프레임 색인을 통해 바로 이동한다.
+	 *
+	 * @param tsList	오름차순으로 정렬된 프레임 캡쳐 시각 배열
+	 * @return	찾은 프레임들의 리스트 (캡쳐 시각 순서)
+	 */
+	public List<EncodedFrame> encodedFrames(long[] tsList) {
+		List<EncodedFrame> found = Lists.newArrayListWithExpectedSize(tsList.length);
+		if ( tsList.length == 0 ) {
+			return found;
+		}
+		
+		Decoder decoder = leaseDecoder(tsList[0]);
+		Mat frame = new Mat();
+		try {
+			if ( decoder.index() != null ) {
+				readIndexed(decoder, tsList, frame, found);
+			}
+			else {
+				readSequentially(decoder, tsList, frame, found);
+			}
+			return found;
+		}
+		finally {
+			decoder.release();
+			frame.release();
+		}
 	}
 	
 	@Override
@@ -69,47 +137,161 @@ public final class Video implements Comparable<Video> {
 							UnitUtils.toSecondString(m_stop - m_start + 1),
 							m_videoFile);
 	}
-
+	
 	@Override
 	public int compareTo(Video o) {
 		return Long.compare(m_start, o.m_start);
 	}
 	
-	private static class CameraFrameStream extends AbstractFStream<CameraFrame> {
+	private Decoder leaseDecoder(long startTs) {
+		return (m_decoders != null) ? m_decoders.lease(m_videoFile, startTs) : Decoder.open(m_videoFile);
+	}
+	
+	private void readIndexed(Decoder decoder, long[] tsList, Mat frame, List<EncodedFrame> found) {
+		VideoCapture cap = decoder.capture();
+		VideoFrameIndex index = decoder.index();
+		
+		for ( long ts: tsList ) {
+			int frameNo = index.ceiling(ts);
+			if ( frameNo >= index.getFrameCount() || index.getTimestamp(frameNo) != ts ) {
+				continue;
+			}
+			
+			int next = decoder.nextFrame();
+			if ( next < 0 || frameNo < next || frameNo - next > MAX_GRAB_FRAMES ) {
+				cap.set(Videoio.CAP_PROP_POS_FRAMES, frameNo);
+			}
+			else {
+				// 가까운 프레임은 이동하지 않고 색 변환 없이 건너뛴다.
+				while ( next < frameNo && cap.grab() ) {
+					++next;
+				}
+				if ( next < frameNo ) {
+					decoder.setNextFrame(-1);
+					continue;
+				}
+			}
+			
+			if ( !cap.read(frame) ) {
+				decoder.setNextFrame(-1);
+				continue;
+			}
+			decoder.setNextFrame(frameNo + 1);
+			found.add(new EncodedFrame(m_cameraId, m_encoder.encode(frame), ts));
+		}
+	}
+	
+	private void readSequentially(Decoder decoder, long[] tsList, Mat frame, List<EncodedFrame> found) {
+		VideoCapture cap = decoder.capture();
+		if ( decoder.nextFrame() != 0 ) {
+			cap.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+		}
+		decoder.setNextFrame(-1);
+		
+		int idx = 0;
+		while ( idx < tsList.length && cap.grab() ) {
+			long ts = (long)cap.get(Videoio.CAP_PROP_POS_MSEC) + m_start;
+			while ( idx < tsList.length && tsList[idx] < ts ) {
+				++idx;
+			}
+			if ( idx < tsList.length && tsList[idx] == ts && cap.retrieve(frame) ) {
+				found.add(new EncodedFrame(m_cameraId, m_encoder.encode(frame), ts));
+				++idx;
+			}
+		}
+	}
+	
+	private static class EncodedFrameStream extends AbstractFStream<EncodedFrame> {
+		// 색인이 없는 경우, 추정된 위치보다 앞쪽으로 이동할 최소 프레임 수
+		private static final int SEEK_MARGIN_FRAMES = 16;
+		
 		private final String m_cameraId;
+		private final JpegEncoder m_encoder;
+		private final Decoder m_decoder;
 		private final VideoCapture m_cap;
 		private final long m_videoStartTs;
 		private final long m_start;
 		private final long m_stop;
-		
+		private final VideoFrameIndex m_index;	// 색인 파일이 없는 경우는 null
 		
 		private long m_cursorTs;
+		private int m_frameNo = -1;
 		private final Mat m_frame = new Mat();
-		private final MatOfByte m_mob = new MatOfByte();
 		
-		private CameraFrameStream(Video video, long start, long stop) {
+		private EncodedFrameStream(Video video, long start, long stop) {
 			m_cameraId = video.m_cameraId;
+			m_encoder = video.m_encoder;
 			m_videoStartTs = video.start();
 			m_start = start;
 			m_stop = stop;
 			
-			m_cap = new VideoCapture();
-			m_cap.open(video.m_videoFile.getAbsolutePath());
+			m_decoder = video.leaseDecoder(start);
+			m_cap = m_decoder.capture();
+			m_index = m_decoder.index();
 			
-			double ratio = (double)(start - m_start) / (m_stop - m_start + 1);
-			int frameNo = (int)Math.floor(m_cap.get(Videoio.CAP_PROP_FRAME_COUNT) * ratio);
-			m_cap.set(Videoio.CAP_PROP_POS_FRAMES, frameNo);
+			if ( m_index != null ) {
+				// 색인을 통해 요청 구간의 첫번째 프레임으로 바로 이동한다.
+				// 디코더가 이미 해당 위치에 있으면 이동하지 않는다.
+				m_frameNo = m_index.ceiling(start);
+				if ( m_frameNo != m_decoder.nextFrame() && m_frameNo < m_index.getFrameCount() ) {
+					m_cap.set(Videoio.CAP_PROP_POS_FRAMES, m_frameNo);
+					m_decoder.setNextFrame(m_frameNo);
+				}
+			}
+			else {
+				if ( m_decoder.nextFrame() != 0 ) {
+					m_cap.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+				}
+				seekApproximately(video.start(), video.stop());
+				m_decoder.setNextFrame(-1);
+			}
 			
 			m_cursorTs = 0;
 		}
-
+		
+		/**
+		 * 비디오 구간 내 요청 시작 시각의 상대 위치를 이용하여 읽기 위치를 추정하여 이동한다.
+		 * <p>
+		 * 샘플링된 프레임들의 간격이 일정하지 않기 때문에 추정 위치보다 조금 앞쪽으로 이동하고,
+		 * 이동한 위치의 프레임이 이미 시작 시각을 지난 경우에는 이동 거리를 두 배씩 늘려 다시 이동한다.
+		 */
+		private void seekApproximately(long videoStart, long videoStop) {
+			double nframes = m_cap.get(Videoio.CAP_PROP_FRAME_COUNT);
+			if ( nframes <= 0 || m_start <= videoStart ) {
+				return;
+			}
+			
+			double ratio = Math.min(1.0, (double)(m_start - videoStart) / (videoStop - videoStart + 1));
+			int target = (int)Math.floor(nframes * ratio);
+			for ( int margin = SEEK_MARGIN_FRAMES; ; margin *= 2 ) {
+				int frameNo = Math.max(0, target - margin);
+				m_cap.set(Videoio.CAP_PROP_POS_FRAMES, frameNo);
+				if ( frameNo == 0 ) {
+					return;
+				}
+				
+				if ( m_cap.read(m_frame) ) {
+					long ts = (long)m_cap.get(Videoio.CAP_PROP_POS_MSEC) + videoStart;
+					if ( ts <= m_start ) {
+						m_cap.set(Videoio.CAP_PROP_POS_FRAMES, frameNo);
+						return;
+					}
+				}
+			}
+		}
+		
 		@Override
 		protected void closeInGuard() throws Exception {
-			m_cap.release();
+			m_decoder.release();
+			m_frame.release();
 		}
-
+		
 		@Override
-		public FOption<CameraFrame> next() {
+		public FOption<EncodedFrame> next() {
+			if ( m_index != null ) {
+				return nextIndexed();
+			}
+			
 			while ( m_cap.read(m_frame) ) {
 				m_cursorTs = (long)m_cap.get(Videoio.CAP_PROP_POS_MSEC) + m_videoStartTs;
 				if ( m_cursorTs < m_start ) {
@@ -119,11 +301,29 @@ public final class Video implements Comparable<Video> {
 					return FOption.empty();
 				}
 				
-				Imgcodecs.imencode(".jpg", m_frame, m_mob);
-				byte[] image = m_mob.toArray();
-				return FOption.of(new CameraFrame(m_cameraId, image, m_cursorTs));
+				byte[] image = m_encoder.encode(m_frame);
+				return FOption.of(new EncodedFrame(m_cameraId, image, m_cursorTs));
 			}
 			return FOption.empty();
 		}
+		
+		private FOption<EncodedFrame> nextIndexed() {
+			if ( m_frameNo >= m_index.getFrameCount() ) {
+				return FOption.empty();
+			}
+			
+			m_cursorTs = m_index.getTimestamp(m_frameNo);
+			if ( m_cursorTs > m_stop ) {
+				return FOption.empty();
+			}
+			if ( !m_cap.read(m_frame) ) {
+				m_decoder.setNextFrame(-1);
+				return FOption.empty();
+			}
+			m_decoder.setNextFrame(++m_frameNo);
+			
+			byte[] image = m_encoder.encode(m_frame);
+			return FOption.of(new EncodedFrame(m_cameraId, image, m_cursorTs));
+		}
 	}
 }
@@ -0,0 +1,237 @@
+package dric.video;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.videoio.VideoCapture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import utils.Utilities;
+
+/**
+ * 비디오 파일별로 열린 {@link VideoCapture} 디코더들을 재사용하기 위한 pool을 정의한다.
+ * <p>
+ * 반환된 디코더는 마지막으로 읽은 위치(다음에 읽을 프레임 번호)를 유지하기 때문에,
+ * 이전 요청이 끝난 위치에서 이어지는 요청은 파일을 다시 열거나 재탐색하지 않고
+ * 바로 다음 프레임부터 읽을 수 있다. 일정 시간 이상 사용되지 않은 디코더는 닫힌다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class VideoDecoderPool implements AutoCloseable {
+	private static final Logger s_logger = LoggerFactory.getLogger(VideoDecoderPool.class);
+	
+	private final int m_maxIdle;
+	private final long m_idleTimeout;
+	private final ArrayDeque<Decoder> m_idles = new ArrayDeque<>();	// 최근 반환된 디코더가 앞쪽
+	private final ScheduledExecutorService m_evictor;
+	private volatile boolean m_closed = false;
+	private long m_openCount = 0;
+	private long m_reuseCount = 0;
+	
+	/**
+	 * 디코더 pool을 생성한다.
+	 *
+	 * @param maxIdle	유지할 수 있는 최대 유휴 디코더 수
+	 * @param idleTimeout	유휴 디코더를 닫기까지의 시간 (ms)
+	 */
+	public VideoDecoderPool(int maxIdle, long idleTimeout) {
+		Utilities.checkArgument(maxIdle >= 0, "invalid max idle decoders: " + maxIdle);
+		Utilities.checkArgument(idleTimeout > 0, "invalid idle timeout: " + idleTimeout);
+		
+		m_maxIdle = maxIdle;
+		m_idleTimeout = idleTimeout;
+		
+		m_evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+																.setNameFormat("dric-decoder-evictor")
+																.setDaemon(true)
+																.build());
+		long period = Math.max(idleTimeout / 2, 1000);
+		m_evictor.scheduleWithFixedDelay(this::evictIdleDecoders, period, period, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * 주어진 비디오 파일의 디코더를 할당받는다.
+	 * <p>
+	 * 같은 파일의 유휴 디코더들 중에서 다음에 읽을 프레임이 {@code startTs} 이후의
+	 * 첫번째 프레임인 디코더를 우선 선택하고, 없는 경우는 가장 최근에 반환된 디코더를 선택한다.
+	 * 유휴 디코더가 없으면 새로 파일을 연다.
+	 *
+	 * @param file	비디오 파일
+	 * @param startTs	읽기 시작할 시각
+	 * @return	디코더
+	 */
+	public Decoder lease(File file, long startTs) {
+		synchronized ( this ) {
+			Decoder found = null;
+			for ( Decoder dec: m_idles ) {
+				if ( dec.m_file.equals(file) ) {
+					if ( dec.isPositionedAt(startTs) ) {
+						found = dec;
+						break;
+					}
+					else if ( found == null ) {
+						found = dec;
+					}
+				}
+			}
+			if ( found != null ) {
+				m_idles.remove(found);
+				++m_reuseCount;
+				return found;
+			}
+			++m_openCount;
+		}
+		
+		return Decoder.open(file, this);
+	}
+	
+	public synchronized int getIdleCount() {
+		return m_idles.size();
+	}
+	
+	public synchronized long getOpenCount() {
+		return m_openCount;
+	}
+	
+	public synchronized long getReuseCount() {
+		return m_reuseCount;
+	}
+	
+	@Override
+	public void close() {
+		m_closed = true;
+		m_evictor.shutdown();
+		
+		synchronized ( this ) {
+			m_idles.forEach(Decoder::closePhysically);
+			m_idles.clear();
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("VideoDecoderPool[idle=%d, opened=%d, reused=%d]",
+							getIdleCount(), getOpenCount(), getReuseCount());
+	}
+	
+	private void giveBack(Decoder dec) {
+		if ( m_closed || m_maxIdle == 0 || !dec.m_cap.isOpened() ) {
+			dec.closePhysically();
+			return;
+		}
+		
+		dec.m_lastUsed = System.currentTimeMillis();
+		Decoder evicted = null;
+		synchronized ( this ) {
+			m_idles.addFirst(dec);
+			if ( m_idles.size() > m_maxIdle ) {
+				evicted = m_idles.pollLast();
+			}
+		}
+		if ( evicted != null ) {
+			evicted.closePhysically();
+		}
+	}
+	
+	private void evictIdleDecoders() {
+		long expired = System.currentTimeMillis() - m_idleTimeout;
+		synchronized ( this ) {
+			for ( Iterator<Decoder> iter = m_idles.iterator(); iter.hasNext(); ) {
+				Decoder dec = iter.next();
+				if ( dec.m_lastUsed < expired ) {
+					iter.remove();
+					dec.closePhysically();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 하나의 비디오 파일에 대해 열린 디코더.
+	 * <p>
+	 * 디코더는 한번에 하나의 스트림에서만 사용되어야 하며, 사용이 끝나면
+	 * {@link #release()}를 호출하여 pool에 반환하여야 한다.
+	 */
+	public static final class Decoder {
+		private final File m_file;
+		private final VideoDecoderPool m_pool;	// pool을 사용하지 않는 경우는 null
+		private final VideoCapture m_cap;
+		private final VideoFrameIndex m_index;
+		private int m_nextFrame = 0;
+		private long m_lastUsed;
+		
+		private Decoder(File file, VideoDecoderPool pool, VideoCapture cap, VideoFrameIndex index) {
+			m_file = file;
+			m_pool = pool;
+			m_cap = cap;
+			m_index = index;
+		}
+		
+		/**
+		 * pool을 거치지 않고 주어진 비디오 파일의 디코더를 연다.
+		 * 반환된 디코더는 {@link #release()} 호출시 바로 닫힌다.
+		 */
+		public static Decoder open(File file) {
+			return open(file, null);
+		}
+		
+		private static Decoder open(File file, VideoDecoderPool pool) {
+			VideoCapture cap = new VideoCapture();
+			if ( !cap.open(file.getAbsolutePath()) ) {
+				s_logger.warn("fails to open video file: {}", file);
+			}
+			return new Decoder(file, pool, cap, VideoFrameIndex.load(file));
+		}
+		
+		public VideoCapture capture() {
+			return m_cap;
+		}
+		
+		/**
+		 * 비디오 파일의 프레임 색인을 반환한다.
+		 *
+		 * @return	프레임 색인. 색인 파일이 없는 경우는 {@code null}.
+		 */
+		public VideoFrameIndex index() {
+			return m_index;
+		}
+		
+		/**
+		 * 다음에 읽을 프레임 번호를 반환한다. 알 수 없는 경우는 음수를 반환한다.
+		 */
+		public int nextFrame() {
+			return m_nextFrame;
+		}
+		
+		public void setNextFrame(int frameNo) {
+			m_nextFrame = frameNo;
+		}
+		
+		/**
+		 * 다음에 읽을 프레임이 주어진 시각 이후의 첫번째 프레임인지 여부를 반환한다.
+		 */
+		boolean isPositionedAt(long ts) {
+			return m_index != null && m_nextFrame >= 0 && m_index.ceiling(ts) == m_nextFrame;
+		}
+		
+		public void release() {
+			if ( m_pool != null ) {
+				m_pool.giveBack(this);
+			}
+			else {
+				closePhysically();
+			}
+		}
+		
+		private void closePhysically() {
+			m_cap.release();
+		}
+	}
+}
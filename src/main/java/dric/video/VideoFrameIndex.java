@@ -0,0 +1,235 @@
+package dric.video;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import utils.Utilities;
+
+/**
+ * 비디오 파일의 프레임 번호별 캡쳐 시각을 기록한 색인을 정의한다.
+ * <p>
+ * 색인은 비디오 파일과 같은 디렉토리에 '{비디오 파일명}.idx' 이름의 파일로 저장되며 그 형식은 아래와 같다.
+ * <pre>
+ * int		magic ('DFIX')
+ * byte		version
+ * byte		flags (FLAG_INTRA_ONLY)
+ * long		첫번째 프레임의 캡쳐 시각 (epoch millis)
+ * int		프레임 수 (n)
+ * n x {
+ *   int	첫번째 프레임 기준 캡쳐 시각 차이 (ms)
+ *   byte	프레임 flags (FRAME_KEY)
+ * }
+ * </pre>
+ * 샘플링된 프레임들의 시간 간격은 일정하지 않기 때문에 본 색인을 사용하면
+ * 주어진 시각의 프레임 번호를 정확하게 구할 수 있다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class VideoFrameIndex {
+	public static final String FILE_SUFFIX = ".idx";
+	
+	private static final int MAGIC = 0x44464958;	// 'DFIX'
+	private static final byte VERSION = 1;
+	private static final byte FLAG_INTRA_ONLY = 0x01;
+	private static final byte FRAME_KEY = 0x01;
+	
+	private final long[] m_timestamps;
+	private final byte[] m_flags;
+	private final boolean m_intraOnly;
+	
+	private VideoFrameIndex(long[] timestamps, byte[] flags, boolean intraOnly) {
+		m_timestamps = timestamps;
+		m_flags = flags;
+		m_intraOnly = intraOnly;
+	}
+	
+	public static File getIndexFile(File videoFile) {
+		return new File(videoFile.getParentFile(), videoFile.getName() + FILE_SUFFIX);
+	}
+	
+	/**
+	 * 주어진 비디오 파일의 색인 파일을 읽는다.
+	 *
+	 * @param videoFile	비디오 파일
+	 * @return	색인 객체. 색인 파일이 없거나 읽을 수 없는 경우는 {@code null}.
+	 */
+	public static VideoFrameIndex load(File videoFile) {
+		File idxFile = getIndexFile(videoFile);
+		if ( !idxFile.isFile() ) {
+			return null;
+		}
+		
+		try ( DataInputStream dis = new DataInputStream(
+										new BufferedInputStream(new FileInputStream(idxFile))) ) {
+			if ( dis.readInt() != MAGIC ) {
+				throw new IOException("invalid frame index file: " + idxFile);
+			}
+			byte version = dis.readByte();
+			if ( version != VERSION ) {
+				throw new IOException("unsupported frame index version: " + version);
+			}
+			boolean intraOnly = (dis.readByte() & FLAG_INTRA_ONLY) != 0;
+			long baseTs = dis.readLong();
+			int count = dis.readInt();
+			
+			long[] timestamps = new long[count];
+			byte[] flags = new byte[count];
+			for ( int i =0; i < count; ++i ) {
+				timestamps[i] = baseTs + dis.readInt();
+				flags[i] = dis.readByte();
+			}
+			
+			return new VideoFrameIndex(timestamps, flags, intraOnly);
+		}
+		catch ( IOException e ) {
+			return null;
+		}
+	}
+	
+	public int getFrameCount() {
+		return m_timestamps.length;
+	}
+	
+	public long getTimestamp(int frameNo) {
+		return m_timestamps[frameNo];
+	}
+	
+	public boolean isKeyFrame(int frameNo) {
+		return m_intraOnly || (m_flags[frameNo] & FRAME_KEY) != 0;
+	}
+	
+	/**
+	 * 캡쳐 시각이 주어진 시각 이후인 첫번째 프레임의 번호를 반환한다.
+	 *
+	 * @param ts	기준 시각
+	 * @return	프레임 번호. 해당 프레임이 없는 경우는 {@link #getFrameCount()}.
+	 */
+	public int ceiling(long ts) {
+		int idx = Arrays.binarySearch(m_timestamps, ts);
+		if ( idx < 0 ) {
+			return -(idx + 1);
+		}
+		
+		// 같은 시각의 프레임이 여러 개인 경우는 첫번째 프레임을 선택한다.
+		while ( idx > 0 && m_timestamps[idx-1] == ts ) {
+			--idx;
+		}
+		return idx;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("VideoFrameIndex[nframes=%d, intra_only=%s]", m_timestamps.length, m_intraOnly);
+	}
+	
+	/**
+	 * 비디오 파일 생성과 함께 프레임 색인을 기록하는 객체.
+	 * <p>
+	 * 프레임 정보는 메모리에 누적되었다가 {@link #close()}가 호출될 때 파일에 기록된다.
+	 * 기록 중 오류가 발생하는 경우 불완전한 색인 파일이 남지 않도록 임시 파일에 먼저 기록한다.
+	 */
+	public static final class Writer implements AutoCloseable {
+		private static final int INITIAL_CAPACITY = 1024;
+		
+		private final File m_idxFile;
+		private final boolean m_intraOnly;
+		private long[] m_timestamps = new long[INITIAL_CAPACITY];
+		private byte[] m_flags = new byte[INITIAL_CAPACITY];
+		private int m_count = 0;
+		private boolean m_closed = false;
+		
+		/**
+		 * 색인 기록 객체를 생성한다.
+		 *
+		 * @param videoFile	색인 대상 비디오 파일
+		 * @param intraOnly	모든 프레임이 key 프레임인 코덱(예: MJPG)의 사용 여부.
+		 * 					{@code false}인 경우는 첫번째 프레임만 key 프레임으로 기록된다.
+		 */
+		public Writer(File videoFile, boolean intraOnly) {
+			Utilities.checkNotNullArgument(videoFile);
+			
+			m_idxFile = getIndexFile(videoFile);
+			m_intraOnly = intraOnly;
+		}
+		
+		public int getFrameCount() {
+			return m_count;
+		}
+		
+		public void append(long ts) {
+			append(ts, m_intraOnly || m_count == 0);
+		}
+		
+		public void append(long ts, boolean keyFrame) {
+			if ( m_count > 0 && ts < m_timestamps[m_count-1] ) {
+				throw new IllegalArgumentException("timestamp goes backward: " + ts);
+			}
+			if ( m_count == m_timestamps.length ) {
+				m_timestamps = Arrays.copyOf(m_timestamps, m_count * 2);
+				m_flags = Arrays.copyOf(m_flags, m_count * 2);
+			}
+			m_timestamps[m_count] = ts;
+			m_flags[m_count] = keyFrame ? FRAME_KEY : 0;
+			++m_count;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if ( m_closed ) {
+				return;
+			}
+			m_closed = true;
+			
+			if ( m_count == 0 ) {
+				return;
+			}
+			
+			File tmpFile = getTempFile();
+			long baseTs = m_timestamps[0];
+			try {
+				try ( DataOutputStream dos = new DataOutputStream(
+												new BufferedOutputStream(new FileOutputStream(tmpFile))) ) {
+					dos.writeInt(MAGIC);
+					dos.writeByte(VERSION);
+					dos.writeByte(m_intraOnly ? FLAG_INTRA_ONLY : 0);
+					dos.writeLong(baseTs);
+					dos.writeInt(m_count);
+					for ( int i =0; i < m_count; ++i ) {
+						dos.writeInt((int)(m_timestamps[i] - baseTs));
+						dos.writeByte(m_flags[i]);
+					}
+				}
+				Files.move(tmpFile.toPath(), m_idxFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch ( IOException e ) {
+				tmpFile.delete();
+				throw e;
+			}
+		}
+		
+		/**
+		 * 색인을 기록하지 않고 닫는다.
+		 * <p>
+		 * 비디오 파일 생성에 실패한 경우에 사용되며, 이미 기록된 색인 파일과 임시 파일도 삭제된다.
+		 */
+		public void discard() {
+			m_closed = true;
+			getTempFile().delete();
+			m_idxFile.delete();
+		}
+		
+		private File getTempFile() {
+			return new File(m_idxFile.getParentFile(), m_idxFile.getName() + ".tmp");
+		}
+	}
+}
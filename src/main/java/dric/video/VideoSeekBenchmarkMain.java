@@ -0,0 +1,118 @@
+package dric.video;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import dric.type.CameraFrame;
+import opencvj.OpenCvInitializer;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Help;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import utils.UsageHelp;
+import utils.func.FOption;
+import utils.stream.FStream;
+
+/**
+ * 비디오 파일 내 위치별 단일 프레임 검색 지연 시간을 프레임 색인 사용 여부에 따라 비교한다.
+ * <p>
+ * 주어진 비디오 파일은 프레임 색인 파일을 가지고 있어야 한다. 색인이 없는 경우와 비교하기 위해
+ * 비디오 파일을 임시 디렉토리에 (색인 파일 없이) 복사한 뒤, 비디오 구간을 일정 간격으로 나누어
+ * 각 위치의 프레임을 두 파일에서 검색하고 위치별 평균 지연 시간을 출력한다.
+ * 색인을 사용하는 경우는 검색 지연 시간이 위치와 무관해야 한다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+@Command(name="video_seek_benchmark",
+		parameterListHeading = "Parameters:%n",
+		optionListHeading = "Options:%n",
+		description="compare single frame lookup latency per offset with and without a frame index")
+public class VideoSeekBenchmarkMain implements Runnable {
+	@Mixin private UsageHelp m_help;
+	
+	@Parameters(paramLabel="video-file", index="0", description={"indexed video file path"})
+	private File m_videoFile;
+	
+	@Parameters(paramLabel="start-ts", index="1", description={"start timestamp of the video (epoch millis)"})
+	private long m_start;
+	
+	@Parameters(paramLabel="stop-ts", index="2", description={"stop timestamp of the video (epoch millis)"})
+	private long m_stop;
+	
+	@Option(names={"--steps"}, paramLabel="count", description={"number of offsets (default: 10)"})
+	private int m_steps = 10;
+	
+	@Option(names={"--repeat"}, paramLabel="count", description={"lookups per offset (default: 3)"})
+	private int m_repeat = 3;
+	
+	public static final void main(String... args) throws Exception {
+		VideoSeekBenchmarkMain cmd = new VideoSeekBenchmarkMain();
+		CommandLine.run(cmd, System.out, System.err, Help.Ansi.OFF, args);
+	}
+	
+	@Override
+	public void run() {
+		File fallbackFile = null;
+		try {
+			OpenCvInitializer.initialize();
+			
+			if ( VideoFrameIndex.load(m_videoFile) == null ) {
+				throw new IllegalArgumentException("frame index not found: video=" + m_videoFile);
+			}
+			
+			// 색인 파일 없이 비디오 파일만 복사하여 색인을 사용하지 않는 경우와 비교한다.
+			fallbackFile = File.createTempFile("seek_benchmark_", "_" + m_videoFile.getName());
+			Files.copy(m_videoFile.toPath(), fallbackFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			
+			System.out.printf("video=%s, length=%dms, fallback=%s%n", m_videoFile,
+								m_stop - m_start + 1, fallbackFile);
+			System.out.printf("%8s %16s %14s %14s%n", "offset", "ts", "indexed(ms)", "fallback(ms)");
+			
+			Video indexed = new Video("benchmark", m_start, m_stop, m_videoFile);
+			Video fallback = new Video("benchmark", m_start, m_stop, fallbackFile);
+			for ( int i =0; i <= m_steps; ++i ) {
+				long ts = m_start + (m_stop - m_start) * i / m_steps;
+				
+				double indexedMillis = measure(indexed, ts);
+				double fallbackMillis = measure(fallback, ts);
+				System.out.printf("%7d%% %16d %14s %14s%n", i * 100 / m_steps, ts,
+									toString(indexedMillis), toString(fallbackMillis));
+			}
+		}
+		catch ( Exception e ) {
+			System.err.printf("failed: %s%n%n", e);
+		}
+		finally {
+			if ( fallbackFile != null ) {
+				fallbackFile.delete();
+			}
+		}
+	}
+	
+	/**
+	 * 주어진 시각 이후의 첫번째 프레임을 검색하는 평균 지연 시간을 측정한다.
+	 *
+	 * @return	평균 지연 시간 (ms). 프레임을 찾지 못한 경우는 음수.
+	 */
+	private double measure(Video video, long ts) throws Exception {
+		long total = 0;
+		boolean found = false;
+		for ( int j =0; j < m_repeat; ++j ) {
+			long started = System.nanoTime();
+			try ( FStream<CameraFrame> frames = video.frames(ts, m_stop) ) {
+				FOption<CameraFrame> frame = frames.findFirst();
+				found = frame.isPresent();
+			}
+			total += System.nanoTime() - started;
+		}
+		
+		return found ? total / (m_repeat * 1_000_000.0) : -1;
+	}
+	
+	private static String toString(double millis) {
+		return (millis >= 0) ? String.format("%.2f", millis) : "not found";
+	}
+}
@@ -0,0 +1,394 @@
+package dric.video;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+import utils.Utilities;
+
+/**
+ * 카메라별로 'camera_videos' 테이블에 등록된 비디오 구간들을 메모리에 유지하는 색인을 정의한다.
+ * <p>
+ * 비디오 구간들은 카메라별로 시작 시각 순으로 정렬된 primitive 배열에 저장되고,
+ * 주어진 시각을 포함하는 구간은 이진 탐색으로 찾는다. 카메라 에이전트가 새로 등록한
+ * 비디오 구간들은 마지막으로 적재한 구간의 시작 시각보다 late window만큼 이전 시각 이후의
+ * 레코드만 질의하는 방식으로 점진적으로 반영된다. 따라서 등록이 지연된 세그먼트나
+ * tail 프레임으로부터 뒤늦게 생성된 비디오처럼 순서를 벗어나 등록된 구간도 late window
+ * 이내이면 색인에 반영된다. 질의된 시각의 구간이 적재되어 있지 않고 그 시각이 late window
+ * 이후인 경우에만 데이터베이스를 확인하며, 이 때도 카메라별로 {@link #DEF_REFRESH_INTERVAL}
+ * 이내에는 다시 질의하지 않는다. 적재된 구간이 없는 카메라는 테이블에 구간이 등록된
+ * 경우에만 색인에 추가된다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class VideoSegmentIndex {
+	private static final Logger s_logger = LoggerFactory.getLogger(VideoSegmentIndex.class);
+	static final long DEF_REFRESH_INTERVAL = 1000;
+	private static final long DEF_LATE_WINDOW = 10 * 60 * 1000;
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private final JdbcConnectionPool m_pool;
+	private final long m_refreshInterval;
+	private final long m_lateWindow;
+	private final ConcurrentMap<String,CameraSegments> m_cameras = new ConcurrentHashMap<>();
+	
+	public VideoSegmentIndex(JdbcConnectionPool pool) {
+		this(pool, DEF_REFRESH_INTERVAL, DEF_LATE_WINDOW);
+	}
+	
+	/**
+	 * 비디오 구간 색인 객체를 생성한다.
+	 *
+	 * @param pool	'camera_videos' 테이블 접근에 사용할 JDBC 연결 pool
+	 * @param refreshInterval	카메라별로 신규 비디오 구간을 질의하는 최소 간격 (ms)
+	 * @param lateWindow	순서를 벗어나 등록된 구간을 다시 확인하는 구간 길이 (ms)
+	 */
+	public VideoSegmentIndex(JdbcConnectionPool pool, long refreshInterval, long lateWindow) {
+		Utilities.checkNotNullArgument(pool);
+		Utilities.checkArgument(refreshInterval >= 0, "invalid refresh interval: " + refreshInterval);
+		Utilities.checkArgument(lateWindow >= 0, "invalid late window: " + lateWindow);
+		
+		m_pool = pool;
+		m_refreshInterval = refreshInterval;
+		m_lateWindow = lateWindow;
+	}
+	
+	/**
+	 * 'camera_videos' 테이블에 등록된 모든 비디오 구간을 적재한다.
+	 *
+	 * @return	적재된 비디오 구간의 수
+	 * @throws SQLException	테이블 접근 중 오류가 발생한 경우.
+	 */
+	public int loadAll() throws SQLException {
+		int count = 0;
+		try ( Connection conn = m_pool.connect() ) {
+			PreparedStatement pstmt = conn.prepareStatement(SQL_SELECT_ALL);
+			try ( ResultSet rs = pstmt.executeQuery() ) {
+				while ( rs.next() ) {
+					CameraSegments segs = m_cameras.computeIfAbsent(rs.getString(1), CameraSegments::new);
+					if ( segs.insert(rs.getLong(2), rs.getLong(3), rs.getString(4)) ) {
+						++count;
+					}
+				}
+			}
+		}
+		
+		long now = System.currentTimeMillis();
+		m_cameras.values().forEach(segs -> segs.m_lastRefresh = now);
+		
+		if ( s_logger.isInfoEnabled() ) {
+			s_logger.info("loaded video segments: cameras={}, segments={}", m_cameras.size(), count);
+		}
+		return count;
+	}
+	
+	/**
+	 * 주어진 시각의 프레임을 포함하는 비디오 구간을 검색한다.
+	 *
+	 * @param cameraId	카메라 식별자
+	 * @param ts	검색 대상 시각
+	 * @return	비디오 구간. 해당 구간이 없는 경우는 {@code null}.
+	 * @throws SQLException	신규 비디오 구간 확인 중 오류가 발생한 경우.
+	 */
+	public Segment find(String cameraId, long ts) throws SQLException {
+		CameraSegments segs = lookup(cameraId);
+		if ( segs == null ) {
+			return null;
+		}
+		
+		Segment found = segs.m_snapshot.find(cameraId, ts);
+		if ( found == null && segs.isRefreshable(ts) && segs.refreshIfStale(false) ) {
+			found = segs.m_snapshot.find(cameraId, ts);
+		}
+		return found;
+	}
+	
+	/**
+	 * 주어진 구간과 겹치는 비디오 구간들을 시작 시각 순으로 반환한다.
+	 *
+	 * @param cameraId	카메라 식별자
+	 * @param start	검색 구간 시작 시각
+	 * @param stop	검색 구간 종료 시각
+	 * @return	비디오 구간 리스트
+	 * @throws SQLException	신규 비디오 구간 확인 중 오류가 발생한 경우.
+	 */
+	public List<Segment> range(String cameraId, long start, long stop) throws SQLException {
+		CameraSegments segs = lookup(cameraId);
+		if ( segs == null || start > stop ) {
+			return Collections.emptyList();
+		}
+		
+		Snapshot snap = segs.m_snapshot;
+		if ( segs.isRefreshable(stop) && segs.refreshIfStale(false) ) {
+			snap = segs.m_snapshot;
+		}
+		
+		// 구간들은 서로 겹치지 않으므로 종료 시각 역시 정렬되어 있다.
+		int from = Arrays.binarySearch(snap.m_stops, 0, snap.m_size, start);
+		from = (from >= 0) ? from : -(from + 1);
+		
+		List<Segment> found = Lists.newArrayList();
+		for ( int i = from; i < snap.m_size && snap.m_starts[i] <= stop; ++i ) {
+			found.add(snap.segment(cameraId, i));
+		}
+		return found;
+	}
+	
+	/**
+	 * 주어진 카메라에 대해 신규로 등록된 비디오 구간들을 즉시 적재한다.
+	 *
+	 * @param cameraId	카메라 식별자
+	 * @throws SQLException	테이블 접근 중 오류가 발생한 경우.
+	 */
+	public void refresh(String cameraId) throws SQLException {
+		CameraSegments segs = m_cameras.get(cameraId);
+		if ( segs != null ) {
+			segs.refreshIfStale(true);
+		}
+		else {
+			lookup(cameraId);
+		}
+	}
+	
+	/**
+	 * 같은 프로세스에서 'camera_videos' 테이블에 추가한 비디오 구간을 색인에 반영한다.
+	 */
+	public void add(String cameraId, long start, long stop, String path) {
+		m_cameras.computeIfAbsent(cameraId, CameraSegments::new).insert(start, stop, path);
+	}
+	
+	public void remove(String cameraId) {
+		m_cameras.remove(cameraId);
+	}
+	
+	public int getSegmentCount(String cameraId) {
+		CameraSegments segs = m_cameras.get(cameraId);
+		return (segs != null) ? segs.m_snapshot.m_size : 0;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("VideoSegmentIndex[cameras=%d]", m_cameras.size());
+	}
+	
+	/**
+	 * 주어진 카메라의 구간 정보를 반환한다.
+	 * <p>
+	 * 적재되지 않은 카메라는 테이블을 질의하여 등록된 구간이 있는 경우에만 색인에 추가하기 때문에,
+	 * 존재하지 않는 카메라 식별자로 질의하더라도 색인이 커지지 않는다.
+	 *
+	 * @return	카메라 구간 정보. 등록된 구간이 없는 경우는 {@code null}.
+	 */
+	private CameraSegments lookup(String cameraId) throws SQLException {
+		CameraSegments segs = m_cameras.get(cameraId);
+		if ( segs != null ) {
+			return segs;
+		}
+		
+		CameraSegments loaded = new CameraSegments(cameraId);
+		if ( !loaded.refreshIfStale(true) ) {
+			return null;
+		}
+		segs = m_cameras.putIfAbsent(cameraId, loaded);
+		return (segs != null) ? segs : loaded;
+	}
+	
+	/**
+	 * 하나의 비디오 구간 정보.
+	 */
+	public static final class Segment {
+		private final String m_cameraId;
+		private final long m_start;
+		private final long m_stop;
+		private final String m_path;
+		
+		Segment(String cameraId, long start, long stop, String path) {
+			m_cameraId = cameraId;
+			m_start = start;
+			m_stop = stop;
+			m_path = path;
+		}
+		
+		public String cameraId() {
+			return m_cameraId;
+		}
+		
+		public long start() {
+			return m_start;
+		}
+		
+		public long stop() {
+			return m_stop;
+		}
+		
+		public String path() {
+			return m_path;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%s[%d-%d]: %s", m_cameraId, m_start, m_stop, m_path);
+		}
+	}
+	
+	/**
+	 * 특정 시점의 카메라 비디오 구간 배열.
+	 * <p>
+	 * 마지막 구간 뒤에 추가하는 경우는 {@link #m_size} 이전의 원소가 변경되지 않으므로,
+	 * 배열 용량이 남아있는 경우에는 새 snapshot이 이전 snapshot과 배열을 공유한다.
+	 * 중간에 삽입하는 경우는 새 배열을 생성한다.
+	 */
+	private static final class Snapshot {
+		private static final Snapshot EMPTY = new Snapshot(new long[0], new long[0], new String[0], 0);
+		
+		private final long[] m_starts;
+		private final long[] m_stops;
+		private final String[] m_paths;
+		private final int m_size;
+		
+		Snapshot(long[] starts, long[] stops, String[] paths, int size) {
+			m_starts = starts;
+			m_stops = stops;
+			m_paths = paths;
+			m_size = size;
+		}
+		
+		long lastStart() {
+			return (m_size > 0) ? m_starts[m_size-1] : Long.MIN_VALUE;
+		}
+		
+		long lastStop() {
+			return (m_size > 0) ? m_stops[m_size-1] : Long.MIN_VALUE;
+		}
+		
+		Segment find(String cameraId, long ts) {
+			int idx = floor(ts);
+			if ( idx >= 0 && m_stops[idx] >= ts ) {
+				return segment(cameraId, idx);
+			}
+			return null;
+		}
+		
+		/**
+		 * 시작 시각이 주어진 시각 이하인 마지막 구간의 인덱스를 반환한다.
+		 */
+		int floor(long ts) {
+			int idx = Arrays.binarySearch(m_starts, 0, m_size, ts);
+			return (idx >= 0) ? idx : -(idx + 1) - 1;
+		}
+		
+		Segment segment(String cameraId, int idx) {
+			return new Segment(cameraId, m_starts[idx], m_stops[idx], m_paths[idx]);
+		}
+	}
+	
+	private final class CameraSegments {
+		private final String m_cameraId;
+		private volatile Snapshot m_snapshot = Snapshot.EMPTY;
+		private volatile long m_lastRefresh = 0;
+		
+		CameraSegments(String cameraId) {
+			m_cameraId = cameraId;
+		}
+		
+		/**
+		 * 주어진 구간을 시작 시각 순서에 맞게 추가한다.
+		 *
+		 * @return	새로 추가된 경우는 {@code true}, 이미 적재된 구간인 경우는 {@code false}.
+		 */
+		synchronized boolean insert(long start, long stop, String path) {
+			Snapshot snap = m_snapshot;
+			int size = snap.m_size;
+			int pos = Arrays.binarySearch(snap.m_starts, 0, size, start);
+			if ( pos >= 0 ) {
+				return false;
+			}
+			pos = -(pos + 1);
+			
+			long[] starts = snap.m_starts;
+			long[] stops = snap.m_stops;
+			String[] paths = snap.m_paths;
+			if ( pos < size || size == starts.length ) {
+				int capacity = (size < starts.length) ? starts.length : Math.max(INITIAL_CAPACITY, size * 2);
+				starts = new long[capacity];
+				stops = new long[capacity];
+				paths = new String[capacity];
+				System.arraycopy(snap.m_starts, 0, starts, 0, pos);
+				System.arraycopy(snap.m_stops, 0, stops, 0, pos);
+				System.arraycopy(snap.m_paths, 0, paths, 0, pos);
+				System.arraycopy(snap.m_starts, pos, starts, pos+1, size-pos);
+				System.arraycopy(snap.m_stops, pos, stops, pos+1, size-pos);
+				System.arraycopy(snap.m_paths, pos, paths, pos+1, size-pos);
+			}
+			starts[pos] = start;
+			stops[pos] = stop;
+			paths[pos] = path;
+			m_snapshot = new Snapshot(starts, stops, paths, size+1);
+			
+			return true;
+		}
+		
+		/**
+		 * 주어진 시각의 구간이 아직 적재되지 않았을 수 있는지 여부를 반환한다.
+		 */
+		boolean isRefreshable(long ts) {
+			Snapshot snap = m_snapshot;
+			return snap.m_size == 0 || ts >= snap.lastStart() - m_lateWindow;
+		}
+		
+		/**
+		 * 마지막으로 적재된 구간의 late window 이후에 등록된 비디오 구간들을 적재한다.
+		 *
+		 * @param force	최소 질의 간격을 무시하고 질의할지 여부
+		 * @return	새로운 구간이 적재된 경우는 {@code true}.
+		 */
+		boolean refreshIfStale(boolean force) throws SQLException {
+			long now = System.currentTimeMillis();
+			if ( !force && now - m_lastRefresh < m_refreshInterval ) {
+				return false;
+			}
+			
+			synchronized ( this ) {
+				if ( !force && now - m_lastRefresh < m_refreshInterval ) {
+					return false;
+				}
+				
+				boolean appended = false;
+				try ( Connection conn = m_pool.connect() ) {
+					PreparedStatement pstmt = conn.prepareStatement(SQL_SELECT_NEWER);
+					pstmt.setString(1, m_cameraId);
+					Snapshot snap = m_snapshot;
+					pstmt.setLong(2, (snap.m_size > 0) ? snap.lastStart() - m_lateWindow : Long.MIN_VALUE);
+					try ( ResultSet rs = pstmt.executeQuery() ) {
+						while ( rs.next() ) {
+							appended |= insert(rs.getLong(1), rs.getLong(2), rs.getString(3));
+						}
+					}
+				}
+				m_lastRefresh = now;
+				
+				return appended;
+			}
+		}
+	}
+	
+	private static final String SQL_SELECT_ALL
+		= "select camera_id, start_ts, stop_ts, file_path from camera_videos "
+		+ 	"order by camera_id, start_ts";
+	
+	private static final String SQL_SELECT_NEWER
+		= "select start_ts, stop_ts, file_path from camera_videos "
+		+ 	"where camera_id = ? and start_ts >= ? "
+		+ 	"order by start_ts";
+}
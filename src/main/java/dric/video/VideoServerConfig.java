@@ -9,25 +9,52 @@ import java.util.Map;
 import dric.ConfigUtils;
 import dric.proto.EndPoint;
 import dric.proto.JdbcEndPoint;
+import opencvj.JpegEncoder;
 
 /**
  * 
  * @author Kang-Woo Lee (ETRI)
  */
 public class VideoServerConfig {
+	private static final int DEF_DECODER_POOL_SIZE = 16;
+	private static final long DEF_DECODER_IDLE_TIMEOUT = 30 * 1000;
+	private static final long DEF_SEGMENT_LATE_WINDOW = 10 * 60 * 1000;
+	
 	private final EndPoint m_vserverEp;
 	private final EndPoint m_platformEp;
 	private final File m_videoTailDir;
 	private final JdbcEndPoint m_jdbcEp;
+	private final JdbcPoolConfig m_jdbcPoolConfig;
 	private final List<File> m_openCvDllList;
+	private final JpegEncoder m_jpegEncoder;
+	private final FrameCacheConfig m_frameCacheConfig;
+	private final int m_decoderPoolSize;
+	private final long m_decoderIdleTimeout;
+	private final GrpcServerConfig m_grpcConfig;
+	private final long m_cameraNotifyInterval;
+	private final boolean m_tailFrameLog;
+	private final long m_segmentLateWindow;
 	
 	private VideoServerConfig(EndPoint vserverEp, EndPoint platformEp, File videoTailDir,
-								JdbcEndPoint jdbcEp, List<File> openCvDllFiles) {
+								JdbcEndPoint jdbcEp, JdbcPoolConfig jdbcPoolConfig,
+								List<File> openCvDllFiles, JpegEncoder jpegEncoder,
+								FrameCacheConfig frameCacheConfig, int decoderPoolSize,
+								long decoderIdleTimeout, GrpcServerConfig grpcConfig,
+								long cameraNotifyInterval, boolean tailFrameLog, long segmentLateWindow) {
 		m_vserverEp = vserverEp;
 		m_platformEp = platformEp;
 		m_videoTailDir = videoTailDir;
 		m_jdbcEp = jdbcEp;
+		m_jdbcPoolConfig = jdbcPoolConfig;
 		m_openCvDllList = openCvDllFiles;
+		m_jpegEncoder = jpegEncoder;
+		m_frameCacheConfig = frameCacheConfig;
+		m_decoderPoolSize = decoderPoolSize;
+		m_decoderIdleTimeout = decoderIdleTimeout;
+		m_grpcConfig = grpcConfig;
+		m_cameraNotifyInterval = cameraNotifyInterval;
+		m_tailFrameLog = tailFrameLog;
+		m_segmentLateWindow = segmentLateWindow;
 	}
 	
 	public static VideoServerConfig from(File configFile, Map<String,String> bindings)
@@ -41,9 +68,25 @@ public class VideoServerConfig {
 		Map<String,Object> videoConf = ConfigUtils.getSubConfig(props, "video");
 		File tailFolder = new File(ConfigUtils.parseString(videoConf, "tail_folder"));
 		JdbcEndPoint jdbc = ConfigUtils.parseJdbcEndPoint(props, "jdbc");
+		JdbcPoolConfig jdbcPool = JdbcPoolConfig.from(Configs.getSubConfigOrEmpty(props, "jdbc"));
 		List<File> dllFileList = ConfigUtils.parseOpenCvDllFiles(props, "opencv_dlls");
+		JpegEncoder encoder = new JpegEncoder(Configs.getInt(videoConf, "jpeg_quality", JpegEncoder.DEFAULT_QUALITY),
+												Configs.getSize(videoConf, "jpeg_max_size"));
+		FrameCacheConfig frameCache = FrameCacheConfig.from(Configs.getSubConfigOrEmpty(videoConf, "frame_cache"));
+		int decoderPoolSize = Configs.getInt(videoConf, "decoder_pool_size", DEF_DECODER_POOL_SIZE);
+		long decoderIdleTimeout = Configs.getDuration(videoConf, "decoder_idle_timeout",
+														DEF_DECODER_IDLE_TIMEOUT);
+		GrpcServerConfig grpc = GrpcServerConfig.from(Configs.getSubConfigOrEmpty(props, "grpc"));
+		long cameraNotifyInterval = Configs.getDuration(videoConf, "camera_notify_interval", 0);
+		String tailStore = Configs.getString(videoConf, "tail_store", "db");
+		if ( !tailStore.equals("db") && !tailStore.equals("log") ) {
+			throw new IllegalArgumentException("invalid video.tail_store: " + tailStore);
+		}
+		long segmentLateWindow = Configs.getDuration(videoConf, "segment_late_window", DEF_SEGMENT_LATE_WINDOW);
 
-		return new VideoServerConfig(videoServerEp, platformEp, tailFolder, jdbc, dllFileList);
+		return new VideoServerConfig(videoServerEp, platformEp, tailFolder, jdbc, jdbcPool, dllFileList, encoder,
+									frameCache, decoderPoolSize, decoderIdleTimeout, grpc,
+									cameraNotifyInterval, tailStore.equals("log"), segmentLateWindow);
 	}
 	
 	public EndPoint getVideoServerEndPoint() {
@@ -58,11 +101,66 @@ public class VideoServerConfig {
 		return m_videoTailDir;
 	}
 	
+	/**
+	 * tail 프레임들을 'camera_frames' 테이블 대신 'video.tail_folder'의 프레임 로그에서 읽을지
+	 * 여부를 반환한다. ('video.tail_store'가 'log'인 경우)
+	 */
+	public boolean isTailFrameLogEnabled() {
+		return m_tailFrameLog;
+	}
+	
 	public JdbcEndPoint getJdbcEndPoint() {
 		return m_jdbcEp;
 	}
 	
+	public JdbcPoolConfig getJdbcPoolConfig() {
+		return m_jdbcPoolConfig;
+	}
+	
 	public List<File> getOpenCvDllList() {
 		return m_openCvDllList;
 	}
+	
+	public JpegEncoder getJpegEncoder() {
+		return m_jpegEncoder;
+	}
+	
+	public FrameCacheConfig getFrameCacheConfig() {
+		return m_frameCacheConfig;
+	}
+	
+	/**
+	 * 비디오 파일 디코더 pool에 유지할 최대 유휴 디코더 수 ('video.decoder_pool_size')
+	 */
+	public int getDecoderPoolSize() {
+		return m_decoderPoolSize;
+	}
+	
+	/**
+	 * 유휴 디코더를 닫기까지의 시간 ('video.decoder_idle_timeout')
+	 */
+	public long getDecoderIdleTimeout() {
+		return m_decoderIdleTimeout;
+	}
+	
+	public GrpcServerConfig getGrpcServerConfig() {
+		return m_grpcConfig;
+	}
+	
+	/**
+	 * 다른 서버에서의 카메라 등록/삭제 알림을 확인하는 주기 ('video.camera_notify_interval').
+	 * 0인 경우는 알림을 확인하지 않는다.
+	 */
+	public long getCameraNotifyInterval() {
+		return m_cameraNotifyInterval;
+	}
+	
+	/**
+	 * 등록이 지연되어 순서를 벗어난 비디오 구간을 다시 확인하는 구간 길이 ('video.segment_late_window').
+	 * 카메라 에이전트가 데이터베이스 장애 동안 등록하지 못한 세그먼트들을 반영하려면
+	 * 예상되는 장애 시간보다 길게 설정하여야 한다.
+	 */
+	public long getSegmentLateWindow() {
+		return m_segmentLateWindow;
+	}
 }
@@ -0,0 +1,33 @@
+package dric.video.grpc;
+
+import com.google.protobuf.UnsafeByteOperations;
+
+import dric.proto.CameraFrameProto;
+import dric.proto.CameraFrameResponse;
+import dric.video.EncodedFrame;
+
+/**
+ * {@link EncodedFrame}으로부터 {@link CameraFrameResponse} 메시지를 생성한다.
+ * <p>
+ * JPEG 이미지는 {@link UnsafeByteOperations#unsafeWrap(byte[])}로 감싸서 메시지에 설정하기 때문에
+ * 메시지 생성 과정에서 이미지가 복사되지 않는다. 인코딩 결과 배열은 이후 변경되지 않으므로
+ * 직렬화 시점까지 공유하여도 안전하다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class CameraFrameResponses {
+	private CameraFrameResponses() {
+		throw new AssertionError("Should not be called this one: " + CameraFrameResponses.class);
+	}
+	
+	static CameraFrameResponse toResponse(EncodedFrame frame) {
+		CameraFrameProto proto = CameraFrameProto.newBuilder()
+												.setCameraId(frame.cameraId())
+												.setImage(UnsafeByteOperations.unsafeWrap(frame.jpeg()))
+												.setTs(frame.ts())
+												.build();
+		return CameraFrameResponse.newBuilder()
+								.setFrame(proto)
+								.build();
+	}
+}
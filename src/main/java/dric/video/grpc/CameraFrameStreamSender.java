@@ -0,0 +1,182 @@
+package dric.video.grpc;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dric.video.DrICVideoException;
+import dric.video.EncodedFrame;
+import io.grpc.stub.ServerCallStreamObserver;
+import utils.func.FOption;
+import utils.func.Try;
+import utils.stream.FStream;
+
+/**
+ * 인코딩된 카메라 프레임 스트림을 gRPC 클라이언트의 수신 속도에 맞추어 전송한다.
+ * <p>
+ * 프레임은 {@link ServerCallStreamObserver#isReady()}가 {@code true}인 동안만 스트림에서
+ * 읽어 전송하고, 전송 버퍼가 차면 {@link ServerCallStreamObserver#setOnReadyHandler(Runnable)}로
+ * 등록된 핸들러가 호출될 때까지 읽기를 멈춘다. 따라서 느린 클라이언트는 Netty 버퍼에
+ * 프레임이 쌓이는 대신 비디오 디코딩 자체를 지연시킨다.
+ * <p>
+ * 프레임 스트림 생성(비디오 검색)과 전송 재개, 취소 처리는 gRPC 쓰레드가 아닌 주어진
+ * {@link Executor}에서 수행되므로, 프레임 디코딩이 gRPC 호출 처리 쓰레드를 점유하지 않는다.
+ * 
+ * @author Kang-Woo Lee (ETRI)
+ */
+class CameraFrameStreamSender<T> {
+	private static final Logger s_logger = LoggerFactory.getLogger(CameraFrameStreamSender.class);
+	
+	private final Callable<FStream<EncodedFrame>> m_opener;
+	private final ServerCallStreamObserver<T> m_out;
+	private final Function<EncodedFrame,T> m_toResponse;
+	private final Function<Exception,T> m_toErrorResponse;
+	private final Executor m_executor;
+	
+	private final AtomicInteger m_wip = new AtomicInteger(0);
+	private volatile boolean m_cancelled = false;
+	private FStream<EncodedFrame> m_frames = null;	// drain()을 수행 중인 쓰레드에서만 접근된다.
+	private boolean m_done = false;		// drain()을 수행 중인 쓰레드에서만 접근된다.
+	private long m_sentCount = 0;
+	
+	/**
+	 * 프레임 스트림 전송기를 생성한다.
+	 *
+	 * @param opener	전송할 프레임 스트림을 생성하는 함수. 처음 전송할 때 {@code executor}에서 호출된다.
+	 * @param out	응답 스트림
+	 * @param toResponse	프레임을 응답 메시지로 변환하는 함수
+	 * @param toErrorResponse	오류를 응답 메시지로 변환하는 함수
+	 * @param executor	프레임 스트림 생성 및 전송에 사용할 executor
+	 */
+	CameraFrameStreamSender(Callable<FStream<EncodedFrame>> opener, ServerCallStreamObserver<T> out,
+							Function<EncodedFrame,T> toResponse, Function<Exception,T> toErrorResponse,
+							Executor executor) {
+		m_opener = opener;
+		m_out = out;
+		m_toResponse = toResponse;
+		m_toErrorResponse = toErrorResponse;
+		m_executor = executor;
+	}
+	
+	/**
+	 * 프레임 전송을 시작한다.
+	 * <p>
+	 * 본 메소드는 취소 및 전송 재개 핸들러를 등록하고, 프레임 스트림 생성과 첫 전송을
+	 * {@code executor}에 요청한 뒤 바로 반환된다. 나머지 프레임들은 클라이언트가 수신 가능해질
+	 * 때마다 전송된다. gRPC는 서비스 메소드가 반환된 후에는 핸들러 등록을 허용하지 않으므로,
+	 * 본 메소드는 서비스 메소드 안에서 호출되어야 한다.
+	 * {@code executor}가 요청을 거부한 경우는 오류 응답으로 호출을 종료한다.
+	 */
+	void start() {
+		m_out.setOnCancelHandler(this::cancel);
+		m_out.setOnReadyHandler(this::schedule);
+		if ( m_wip.getAndIncrement() != 0 ) {
+			return;
+		}
+		
+		try {
+			m_executor.execute(this::drain);
+		}
+		catch ( RejectedExecutionException e ) {
+			// 아직 스트림을 생성하지 않았으므로 호출 쓰레드에서 검색하지 않고 바로 종료한다.
+			complete(new DrICVideoException("video server is busy: too many pending requests"));
+			m_wip.decrementAndGet();
+		}
+	}
+	
+	private void cancel() {
+		// 스트림은 프레임을 읽는 쓰레드에서 close되도록 drain()을 통해 처리한다.
+		m_cancelled = true;
+		schedule();
+	}
+	
+	private void schedule() {
+		// schedule()은 호출 쓰레드와 gRPC 쓰레드에서 동시에 호출될 수 있으므로,
+		// 하나의 쓰레드만 전송하고 나머지 호출은 전송 쓰레드가 다시 확인하도록 한다.
+		if ( m_wip.getAndIncrement() != 0 ) {
+			return;
+		}
+		
+		try {
+			m_executor.execute(this::drain);
+		}
+		catch ( RejectedExecutionException e ) {
+			// 이미 시작된 전송이 멈추지 않도록, 작업 큐가 가득 찬 경우는 호출 쓰레드에서 전송한다.
+			drain();
+		}
+	}
+	
+	private void drain() {
+		int missed = 1;
+		while ( true ) {
+			if ( m_cancelled && !m_done ) {
+				m_done = true;
+				closeFrames();
+				
+				if ( s_logger.isDebugEnabled() ) {
+					s_logger.debug("frame stream cancelled: sent={}", m_sentCount);
+				}
+			}
+			
+			if ( !m_done && !m_cancelled && m_frames == null ) {
+				try {
+					m_frames = m_opener.call();
+				}
+				catch ( Exception e ) {
+					complete(e);
+				}
+			}
+			
+			while ( !m_done && !m_cancelled && m_out.isReady() ) {
+				try {
+					FOption<EncodedFrame> next = m_frames.next();
+					if ( !next.isPresent() ) {
+						complete(null);
+						break;
+					}
+					
+					m_out.onNext(m_toResponse.apply(next.getOrNull()));
+					++m_sentCount;
+				}
+				catch ( Exception e ) {
+					complete(e);
+				}
+			}
+			
+			missed = m_wip.addAndGet(-missed);
+			if ( missed == 0 ) {
+				return;
+			}
+		}
+	}
+	
+	private void complete(Exception error) {
+		// 스트림은 응답 종료 결과와 무관하게 항상 close된다.
+		m_done = true;
+		closeFrames();
+		
+		// 응답 종료 중 오류(클라이언트 취소 등)가 drain() 밖으로 전달되면 'm_wip'가
+		// 감소되지 않아 이후의 schedule() 호출이 모두 무시되므로, 여기서 처리한다.
+		try {
+			if ( error != null ) {
+				s_logger.warn("fails to send camera frames: sent={}, cause={}", m_sentCount, error.toString());
+				m_out.onNext(m_toErrorResponse.apply(error));
+			}
+			m_out.onCompleted();
+		}
+		catch ( Exception e ) {
+			s_logger.warn("fails to complete camera frame stream: sent={}, cause={}", m_sentCount, e.toString());
+		}
+	}
+	
+	private void closeFrames() {
+		if ( m_frames != null ) {
+			Try.run(m_frames::close);
+		}
+	}
+}
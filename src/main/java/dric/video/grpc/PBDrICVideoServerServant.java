@@ -1,5 +1,11 @@
 package dric.video.grpc;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
 import dric.proto.CameraFrameRangeRequest;
 import dric.proto.CameraFrameRequest;
 import dric.proto.CameraFrameResponse;
@@ -9,11 +15,14 @@ import dric.proto.DrICVideoServerGrpc.DrICVideoServerImplBase;
 import dric.proto.PlaybackStreamRequest;
 import dric.proto.VideoStream;
 import dric.proto.VideoStreamResponse;
-import dric.type.CameraFrame;
 import dric.video.CameraExistsException;
+import dric.video.CameraFrameServer;
 import dric.video.CameraNotFoundException;
+import dric.video.DrICVideoException;
 import dric.video.DrICVideoServer;
+import dric.video.EncodedFrame;
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import marmot.proto.ErrorProto;
 import marmot.proto.ErrorProto.Code;
@@ -23,14 +32,23 @@ import marmot.proto.VoidResponse;
 import utils.grpc.PBUtils;
 
 /**
+ * 카메라 정보 조회 등 가벼운 호출은 gRPC 호출 쓰레드에서 바로 처리하고, NVR 접근이나
+ * 프레임 디코딩과 같은 블로킹 작업은 별도의 비디오 작업 {@link Executor}에서 처리한다.
+ * 비디오 작업 {@link Executor}가 더 이상 작업을 받을 수 없으면 요청은 바로 실패한다.
  * 
  * @author Kang-Woo Lee (ETRI)
  */
 public class PBDrICVideoServerServant extends DrICVideoServerImplBase {
 	private final DrICVideoServer m_server;
+	private final Executor m_videoExecutor;
 	
 	public PBDrICVideoServerServant(DrICVideoServer server) {
+		this(server, MoreExecutors.directExecutor());
+	}
+	
+	public PBDrICVideoServerServant(DrICVideoServer server, Executor videoExecutor) {
 		m_server = server;
+		m_videoExecutor = videoExecutor;
 	}
 	
 	@Override
@@ -73,6 +91,13 @@ public class PBDrICVideoServerServant extends DrICVideoServerImplBase {
 	
 	@Override
     public void getPlaybackStream(PlaybackStreamRequest req, StreamObserver<VideoStreamResponse> out) {
+		runVideoTask(() -> getPlaybackStreamInGuard(req, out),
+					e -> out.onError(Status.RESOURCE_EXHAUSTED
+											.withDescription(e.getMessage())
+											.asException()));
+	}
+	
+	private void getPlaybackStreamInGuard(PlaybackStreamRequest req, StreamObserver<VideoStreamResponse> out) {
 		try {
 			VideoStream videoStream = m_server.getPlaybackStream(req);
 			out.onNext(toVideoStreamResponse(videoStream));
@@ -124,60 +149,78 @@ public class PBDrICVideoServerServant extends DrICVideoServerImplBase {
 		}
 	}
 	
-//	@Override
+	@Override
     public void getCameraFrame(CameraFrameRequest req, StreamObserver<CameraFrameResponse> out) {
-//		try {
-//			CameraFrame frame = m_server.getCameraFrame(req.getCameraId(), req.getTs());
-//			out.onNext(toResponse(frame));
-//		}
-//		catch ( Exception e ) {
-//			out.onNext(toResponse(e));
-//		}
-//		finally {
-//			out.onCompleted();
-//		}
+		runVideoTask(() -> getCameraFrameInGuard(req, out), e -> {
+			out.onNext(toResponse(e));
+			out.onCompleted();
+		});
+	}
+	
+	private void getCameraFrameInGuard(CameraFrameRequest req, StreamObserver<CameraFrameResponse> out) {
+		try {
+			EncodedFrame frame = getFrameServer().getEncodedFrame(req.getCameraId(), req.getTs());
+			out.onNext(toResponse(frame));
+		}
+		catch ( Exception e ) {
+			out.onNext(toResponse(e));
+		}
+		finally {
+			out.onCompleted();
+		}
 	}
 
-//	@Override
+	@Override
     public void queryCameraFrames(CameraFrameRangeRequest req, StreamObserver<CameraFrameResponse> out) {
-//		try {
-//			m_server.queryCameraFrames(req.getCameraId(), req.getStartTs(), req.getStopTs())
-//					.map(this::toResponse)
-//					.forEach(out::onNext);
-//		}
-//		catch ( Exception e ) {
-//			out.onNext(toResponse(e));
-//		}
-//		finally {
-//			out.onCompleted();
-//		}
+		// gRPC는 서비스 메소드가 반환된 뒤에는 취소/전송 재개 핸들러 등록을 허용하지 않으므로
+		// 핸들러는 여기서 등록하고, 비디오 검색과 프레임 전송만 video executor에서 수행한다.
+		ServerCallStreamObserver<CameraFrameResponse> sout = (ServerCallStreamObserver<CameraFrameResponse>)out;
+		new CameraFrameStreamSender<CameraFrameResponse>(
+				() -> getFrameServer().queryEncodedFrames(req.getCameraId(), req.getStartTs(), req.getStopTs()),
+				sout, this::toResponse, this::toResponse, m_videoExecutor)
+			.start();
+	}
+	
+	private void runVideoTask(Runnable task, Consumer<Exception> onRejected) {
+		try {
+			m_videoExecutor.execute(task);
+		}
+		catch ( RejectedExecutionException e ) {
+			onRejected.accept(new DrICVideoException("video server is busy: too many pending requests"));
+		}
 	}
-    
+	
+	private CameraFrameServer getFrameServer() {
+		if ( m_server instanceof CameraFrameServer ) {
+			return (CameraFrameServer)m_server;
+		}
+		throw new UnsupportedOperationException("camera frame retrieval is not supported: server="
+												+ m_server.getClass().getSimpleName());
+	}
+
     private VideoStreamResponse toVideoStreamResponse(VideoStream stream) {
     	return VideoStreamResponse.newBuilder()
     							.setStreamInfo(stream)
     							.build();
     }
-    
+
     private CameraInfoResponse toCameraInfoResponse(CameraInfo camera) {
     	return CameraInfoResponse.newBuilder()
     							.setCameraInfo(camera)
     							.build();
     }
-    
+
     private CameraInfoResponse toCameraInfoResponse(Exception e) {
     	return CameraInfoResponse.newBuilder()
 								.setError(PBUtils.ERROR(e))
 								.build();
     }
-    
-    private CameraFrameResponse toResponse(CameraFrame frame) {
-    	return null;
-//    	return CameraFrameResponse.newBuilder()
-//								.setFrame(frame.toProto())
-//								.build();
+
+    private CameraFrameResponse toResponse(EncodedFrame frame) {
+    	// JPEG 이미지를 복사하지 않고 메시지를 생성한다.
+    	return CameraFrameResponses.toResponse(frame);
     }
-    
+
     private CameraFrameResponse toResponse(Exception e) {
     	return CameraFrameResponse.newBuilder()
 								.setError(PBUtils.ERROR(e))
@@ -1,16 +1,27 @@
 package dric.video.sunapi;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScheme;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.AuthenticationException;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.AuthCache;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.protocol.HttpClientContext;
@@ -20,7 +31,12 @@ import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.BasicResponseHandler;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -42,17 +58,66 @@ import utils.func.Tuple3;
 import utils.stream.FStream;
 
 /**
+ * SunAPI를 지원하는 NVR을 이용한 비디오 서버.
+ * <p>
+ * NVR에 등록된 카메라(채널)와 'dric' 프로파일 정보는 메모리에 캐싱되며, 캐싱 유효 시간의
+ * 절반마다 별도 쓰레드에서 갱신된다. 캐싱된 정보가 만료된 상태에서 동시에 들어온 요청들은
+ * 한번의 NVR 조회 결과를 공유한다. 갱신에 실패한 경우는 이전 정보를 계속 사용하며,
+ * 다음 갱신은 실패할 때마다 두 배씩 늘어나는 간격이 지난 후에 시도한다.
+ * 채널별 스트림 URI도 카메라 정보가 바뀌기 전까지 캐싱된다.
+ * <p>
+ * NVR 호출은 연결 pool을 사용하는 하나의 {@link CloseableHttpClient}를 통해 이루어지며,
+ * 동일 URL에 대한 호출이 진행 중인 상태에서 들어온 호출은 NVR을 다시 호출하지 않고
+ * 진행 중인 호출의 결과를 공유한다.
  * 
  * @author Kang-Woo Lee (ETRI)
  */
 public class SunApiVideoServerImpl implements DrICVideoServer {
+	private static final Logger s_logger = LoggerFactory.getLogger(SunApiVideoServerImpl.class);
+	private static final long DEF_CATALOG_TTL = 5 * 60 * 1000;
+	private static final long MIN_RELOAD_BACKOFF = 1000;
+	private static final long MAX_RELOAD_BACKOFF = 60 * 1000;
+	private static final int MAX_CONNECTIONS = 8;
+	private static final int CONNECT_TIMEOUT = 5 * 1000;
+	private static final int SOCKET_TIMEOUT = 30 * 1000;
+	private static final int CONNECTION_REQUEST_TIMEOUT = 10 * 1000;
+	private static final String DEF_DIGEST_REALM = "Wisenet NVR";
+	private static final String DEF_DIGEST_NONCE = "000000000000000000000000283026E7";
+	
 	private final String m_host;
 	private final int m_port;
 	private final String m_userId;
 	private final String m_passwd;
-	private final HttpClientContext m_context;
+	private final HttpHost m_httpHost;
+	private final CloseableHttpClient m_client;
+	private final ConcurrentMap<String,CompletableFuture<Tuple3<Integer,String,JsonObject>>> m_inflights
+																				= new ConcurrentHashMap<>();
+	// 호출마다 새로 생성하는 digest 인증 정보의 초기값 (마지막 응답에서 갱신된다)
+	private volatile String m_digestRealm = DEF_DIGEST_REALM;
+	private volatile String m_digestNonce = DEF_DIGEST_NONCE;
+	
+	private final long m_catalogTtl;
+	private final Object m_catalogLock = new Object();
+	private volatile Catalog m_catalog;		// 아직 적재되지 않은 경우는 null
+	private volatile long m_retryAt = 0;	// 갱신 실패 후 다음 갱신을 시도할 시각
+	private long m_reloadBackoff = MIN_RELOAD_BACKOFF;	// m_catalogLock으로 보호된다.
+	private final ConcurrentMap<String,String> m_streamUris = new ConcurrentHashMap<>();	// 요청 URL -> 스트림 URI
+	private final ScheduledExecutorService m_refresher;
 	
 	public SunApiVideoServerImpl(String host, int port, String userId, String passwd) {
+		this(host, port, userId, passwd, DEF_CATALOG_TTL);
+	}
+	
+	/**
+	 * SunAPI 비디오 서버 객체를 생성한다.
+	 *
+	 * @param host	NVR 호스트 주소
+	 * @param port	NVR 포트 번호
+	 * @param userId	NVR 사용자 식별자
+	 * @param passwd	NVR 사용자 암호
+	 * @param catalogTtl	NVR 카메라 정보 캐싱 유효 시간 (ms)
+	 */
+	public SunApiVideoServerImpl(String host, int port, String userId, String passwd, long catalogTtl) {
 		m_host = host;
 		m_port = port;
 		m_userId = userId;
@@ -60,17 +125,39 @@ public class SunApiVideoServerImpl implements DrICVideoServer {
 		
 	    CredentialsProvider cred = new BasicCredentialsProvider();
 	    cred.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(m_userId, m_passwd));
-	    AuthCache cache = new BasicAuthCache();
-	    DigestScheme scheme = new DigestScheme();
-	    scheme.overrideParamter("realm", "Wisenet NVR");
-	    scheme.overrideParamter("nonce", "000000000000000000000000283026E7");
+	    m_httpHost = new HttpHost(m_host, m_port, "http");
 	    
-	    HttpHost httpHost = new HttpHost(m_host, m_port, "http");
-	    cache.put(httpHost, scheme);
+	    PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager();
+	    connManager.setMaxTotal(MAX_CONNECTIONS);
+	    connManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+	    RequestConfig reqConfig = RequestConfig.custom()
+	    										.setConnectTimeout(CONNECT_TIMEOUT)
+	    										.setSocketTimeout(SOCKET_TIMEOUT)
+	    										.setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT)
+	    										.build();
+	    m_client = HttpClients.custom()
+	    						.setConnectionManager(connManager)
+	    						.setDefaultCredentialsProvider(cred)
+	    						.setDefaultRequestConfig(reqConfig)
+	    						.build();
 	    
-	    m_context = HttpClientContext.create();
-	    m_context.setCredentialsProvider(cred);
-	    m_context.setAuthCache(cache);
+	    m_catalogTtl = catalogTtl;
+	    m_refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+																.setNameFormat("dric-sunapi-refresher")
+																.setDaemon(true)
+																.build());
+	    long period = Math.max(catalogTtl / 2, 1000);
+	    m_refresher.scheduleWithFixedDelay(this::refreshCatalog, 0, period, TimeUnit.MILLISECONDS);
+	}
+	
+	public void close() {
+		m_refresher.shutdownNow();
+		try {
+			m_client.close();
+		}
+		catch ( IOException e ) {
+			s_logger.warn("fails to close NVR http client: cause={}", e.toString());
+		}
 	}
 	
 	@Override
@@ -98,30 +185,46 @@ public class SunApiVideoServerImpl implements DrICVideoServer {
 		public String toString() {
 			return String.format("SunAPI_Camera[id=%s, channel=%d, profile=%d]", m_cameraId, m_channel, m_profile);
 		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if ( this == obj ) {
+				return true;
+			}
+			else if ( obj == null || obj.getClass() != SunApiCameraInfo.class ) {
+				return false;
+			}
+			
+			SunApiCameraInfo other = (SunApiCameraInfo)obj;
+			return m_cameraId.equals(other.m_cameraId) && m_channel == other.m_channel
+					&& m_profile == other.m_profile;
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(m_cameraId, m_channel, m_profile);
+		}
+	}
+	
+	private static final class Catalog {
+		private final Map<String,SunApiCameraInfo> m_cameras;
+		private final long m_loadedAt;
+		
+		Catalog(Map<String,SunApiCameraInfo> cameras, long loadedAt) {
+			m_cameras = cameras;
+			m_loadedAt = loadedAt;
+		}
 	}
 
 	@Override
 	public CameraInfo getCamera(String cameraId) throws CameraNotFoundException, DrICVideoException {
 		try {
-			Map<String,SunApiCameraInfo> infos = loadCameraInfos();
-			SunApiCameraInfo info = infos.get(cameraId);
+			SunApiCameraInfo info = getCameraInfos().get(cameraId);
 			if ( info == null ) {
 				throw new CameraNotFoundException("camera.id=" + cameraId);
 			}
 			
-			String urlTmpt = "http://%s:%d/stw-cgi/media.cgi?msubmenu=streamuri&action=view&Channel=%d"
-						+ "&MediaType=Live&Mode=Full&ClientType=PC&StreamType=RTPUnicast&TransportProtocol=TCP"
-						+ "&RTSPOverHTTP=False";
-			String url = String.format(urlTmpt, m_host, m_port, info.m_channel);
-			Tuple3<Integer,String,JsonObject> ret = callGetMethod(url);
-			String streamUri = ret._3.get("URI").getAsString();
-			String rtspUrl = String.format("%s%s:%s@%s", streamUri.substring(0, 7), m_userId, m_passwd,
-																	streamUri.substring(7));
-			
-			return CameraInfo.newBuilder()
-							.setId(cameraId)
-							.setRtspUrl(rtspUrl)
-							.build();
+			return toCameraInfo(info);
 		}
 		catch ( CameraNotFoundException e ) {
 			throw e;
@@ -133,14 +236,33 @@ public class SunApiVideoServerImpl implements DrICVideoServer {
 
 	@Override
 	public FStream<CameraInfo> getCameraAll() throws DrICVideoException {
-		throw new UnsupportedOperationException();
+		try {
+			List<CameraInfo> cameras = FStream.from(getCameraInfos().values())
+												.mapOrThrow(this::toCameraInfo)
+												.toList();
+			return FStream.from(cameras);
+		}
+		catch ( Exception e ) {
+			throw new DrICVideoException(e);
+		}
+	}
+	
+	private CameraInfo toCameraInfo(SunApiCameraInfo info) throws AuthenticationException, IOException {
+		String urlTmpt = "http://%s:%d/stw-cgi/media.cgi?msubmenu=streamuri&action=view&Channel=%d"
+					+ "&MediaType=Live&Mode=Full&ClientType=PC&StreamType=RTPUnicast&TransportProtocol=TCP"
+					+ "&RTSPOverHTTP=False";
+		String url = String.format(urlTmpt, m_host, m_port, info.m_channel);
+		
+		return CameraInfo.newBuilder()
+						.setId(info.m_cameraId)
+						.setRtspUrl(attachAuth(getStreamUri(url)))
+						.build();
 	}
 
 	@Override
 	public VideoStream getPlaybackStream(PlaybackStreamRequest req) throws DrICVideoException {
 		try {
-			Map<String,SunApiCameraInfo> infos = loadCameraInfos();
-			SunApiCameraInfo info = infos.get(req.getCameraId());
+			SunApiCameraInfo info = getCameraInfos().get(req.getCameraId());
 			if ( info == null ) {
 				throw new CameraNotFoundException("camera.id=" + req.getCameraId());
 			}
@@ -149,8 +271,7 @@ public class SunApiVideoServerImpl implements DrICVideoServer {
 						+ "&Profile=%d&MediaType=Search&Mode=Full&ClientType=PC&StreamType=RTPUnicast"
 						+ "&TransportProtocol=TCP&RTSPOverHTTP=False";
 			String url = String.format(urlTmpt, m_host, m_port, info.m_channel, info.m_profile);
-			Tuple3<Integer,String,JsonObject> ret = callGetMethod(url);
-			String streamUri = ret._3.get("URI").getAsString();
+			String streamUri = getStreamUri(url);
 			String rtspUrl = String.format("%s&start=%s&stop=%s",  attachAuth(streamUri), req.getStartTime(), req.getStopTime());
 			
 			return VideoStream.newBuilder()
@@ -180,6 +301,92 @@ public class SunApiVideoServerImpl implements DrICVideoServer {
 		throw new UnsupportedOperationException();
 	}
 	
+	/**
+	 * 캐싱된 카메라 정보를 반환한다.
+	 * <p>
+	 * 캐싱된 정보가 없거나 만료된 경우는 NVR에서 다시 읽으며, 이때 동시에 호출된 쓰레드들은
+	 * 한번의 조회 결과를 공유한다. 만료된 정보를 갱신하지 못한 경우는 이전 정보를 사용하며,
+	 * 재시도 간격이 지나기 전까지는 NVR을 다시 호출하지 않고 이전 정보를 바로 반환한다.
+	 */
+	private Map<String,SunApiCameraInfo> getCameraInfos() throws AuthenticationException, IOException {
+		Catalog catalog = m_catalog;
+		if ( catalog != null && isUsable(catalog) ) {
+			return catalog.m_cameras;
+		}
+		
+		synchronized ( m_catalogLock ) {
+			catalog = m_catalog;
+			if ( catalog != null && isUsable(catalog) ) {
+				return catalog.m_cameras;
+			}
+			
+			try {
+				return reloadCatalog().m_cameras;
+			}
+			catch ( AuthenticationException | IOException e ) {
+				if ( catalog == null ) {
+					throw e;
+				}
+				
+				s_logger.warn("fails to reload SunAPI cameras, use stale ones: cause={}", e.toString());
+				return catalog.m_cameras;
+			}
+		}
+	}
+	
+	private boolean isUsable(Catalog catalog) {
+		long now = System.currentTimeMillis();
+		return now - catalog.m_loadedAt <= m_catalogTtl || now < m_retryAt;
+	}
+	
+	private void refreshCatalog() {
+		synchronized ( m_catalogLock ) {
+			try {
+				reloadCatalog();
+			}
+			catch ( Exception e ) {
+				s_logger.warn("fails to refresh SunAPI cameras: cause={}", e.toString());
+			}
+		}
+	}
+	
+	// m_catalogLock을 획득한 상태에서 호출되어야 한다.
+	private Catalog reloadCatalog() throws AuthenticationException, IOException {
+		Map<String,SunApiCameraInfo> cameras;
+		try {
+			cameras = loadCameraInfos();
+		}
+		catch ( AuthenticationException | IOException | RuntimeException e ) {
+			m_retryAt = System.currentTimeMillis() + m_reloadBackoff;
+			m_reloadBackoff = Math.min(m_reloadBackoff * 2, MAX_RELOAD_BACKOFF);
+			throw e;
+		}
+		m_retryAt = 0;
+		m_reloadBackoff = MIN_RELOAD_BACKOFF;
+		
+		Catalog prev = m_catalog;
+		if ( prev == null || !prev.m_cameras.equals(cameras) ) {
+			// 채널이나 프로파일 구성이 바뀐 경우는 캐싱된 스트림 URI들을 버린다.
+			m_streamUris.clear();
+			if ( s_logger.isInfoEnabled() ) {
+				s_logger.info("loaded SunAPI cameras: {}", cameras.values());
+			}
+		}
+		
+		Catalog catalog = new Catalog(cameras, System.currentTimeMillis());
+		m_catalog = catalog;
+		return catalog;
+	}
+	
+	private String getStreamUri(String url) throws AuthenticationException, IOException {
+		String uri = m_streamUris.get(url);
+		if ( uri == null ) {
+			uri = callGetMethod(url)._3.get("URI").getAsString();
+			m_streamUris.put(url, uri);
+		}
+		return uri;
+	}
+	
 	private Map<String,SunApiCameraInfo> loadCameraInfos() throws AuthenticationException, IOException {
 		String url;
 		Tuple3<Integer,String,JsonObject> ret;
@@ -234,28 +441,112 @@ public class SunApiVideoServerImpl implements DrICVideoServer {
 		return name.equals("dric");
 	}
 	
+	/**
+	 * 주어진 URL로 NVR을 호출한다.
+	 * <p>
+	 * 동일 URL에 대한 호출이 이미 진행 중이면 NVR을 다시 호출하지 않고 그 결과를 기다린다.
+	 */
 	private Tuple3<Integer,String,JsonObject> callGetMethod(String url) throws IOException, AuthenticationException {
-		try ( CloseableHttpClient client = HttpClients.createDefault(); ) {
-			HttpGet httpGet = new HttpGet(url);
-			
-		    httpGet.setHeader("Content-type", "application/json");
-		    httpGet.setHeader("Accept", "application/json");
+		CompletableFuture<Tuple3<Integer,String,JsonObject>> call = new CompletableFuture<>();
+		CompletableFuture<Tuple3<Integer,String,JsonObject>> inflight = m_inflights.putIfAbsent(url, call);
+		if ( inflight != null ) {
+			return awaitCall(inflight);
+		}
+		
+		try {
+			Tuple3<Integer,String,JsonObject> ret = executeGetMethod(url);
+			call.complete(ret);
+			return ret;
+		}
+		catch ( IOException | AuthenticationException | RuntimeException e ) {
+			call.completeExceptionally(e);
+			throw e;
+		}
+		finally {
+			m_inflights.remove(url, call);
+		}
+	}
+	
+	private Tuple3<Integer,String,JsonObject> awaitCall(CompletableFuture<Tuple3<Integer,String,JsonObject>> call)
+		throws IOException, AuthenticationException {
+		try {
+			return call.get();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting NVR response");
+		}
+		catch ( ExecutionException e ) {
+			Throwable cause = e.getCause();
+			if ( cause instanceof IOException ) {
+				throw (IOException)cause;
+			}
+			else if ( cause instanceof AuthenticationException ) {
+				throw (AuthenticationException)cause;
+			}
+			else if ( cause instanceof RuntimeException ) {
+				throw (RuntimeException)cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+	
+	private Tuple3<Integer,String,JsonObject> executeGetMethod(String url)
+		throws IOException, AuthenticationException {
+		HttpGet httpGet = new HttpGet(url);
+	    httpGet.setHeader("Content-type", "application/json");
+	    httpGet.setHeader("Accept", "application/json");
 
-		    CloseableHttpResponse resp = client.execute(httpGet, m_context);
+	    HttpClientContext context = newContext();
+	    try ( CloseableHttpResponse resp = m_client.execute(httpGet, context) ) {
+	    	updateDigestParams(context);
+	
 	    	String details = String.format("%s(%d)", resp.getStatusLine().getReasonPhrase(),
 														resp.getStatusLine().getStatusCode());
 		    int code = resp.getStatusLine().getStatusCode();
 		    if ( code >= 200 && code < 300 ) {
 				JsonParser gson = new JsonParser();
 			    ResponseHandler<String> handler = new BasicResponseHandler();
-//			    System.out.println(handler.handleResponse(resp));
 				JsonObject json = gson.parse(handler.handleResponse(resp)).getAsJsonObject();
 			    
 			    return Tuple.of(code, details, json);
 		    }
 		    else {
+		    	// 연결이 pool에 반환될 수 있도록 응답 내용을 모두 읽는다.
+		    	EntityUtils.consume(resp.getEntity());
 		    	return Tuple.of(code, details, (JsonObject)null);
 		    }
+	    }
+	}
+	
+	/**
+	 * NVR 호출용 {@link HttpClientContext}를 생성한다.
+	 * <p>
+	 * {@link DigestScheme}은 쓰레드 안전하지 않기 때문에, 호출마다 마지막으로 확인된
+	 * realm과 nonce로 초기화된 digest 인증 정보를 새로 만들어 선제 인증에 사용한다.
+	 */
+	private HttpClientContext newContext() {
+	    DigestScheme scheme = new DigestScheme();
+	    scheme.overrideParamter("realm", m_digestRealm);
+	    scheme.overrideParamter("nonce", m_digestNonce);
+	    AuthCache cache = new BasicAuthCache();
+	    cache.put(m_httpHost, scheme);
+	
+	    HttpClientContext context = HttpClientContext.create();
+	    context.setAuthCache(cache);
+	    return context;
+	}
+	
+	private void updateDigestParams(HttpClientContext context) {
+		AuthScheme scheme = context.getAuthCache().get(m_httpHost);
+		if ( scheme instanceof DigestScheme ) {
+			DigestScheme digest = (DigestScheme)scheme;
+			String realm = digest.getParameter("realm");
+			String nonce = digest.getParameter("nonce");
+			if ( realm != null && nonce != null ) {
+				m_digestRealm = realm;
+				m_digestNonce = nonce;
+			}
 		}
 	}
 	
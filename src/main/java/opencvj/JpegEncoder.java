@@ -0,0 +1,113 @@
+package opencvj;
+
+import java.util.Objects;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import utils.Utilities;
+
+
+/**
+ * <code>JpegEncoder</code>는 이미지를 JPEG 형식으로 인코딩하는 기능을 제공한다.
+ * <p>
+ * 인코딩 품질과 최대 해상도를 지정할 수 있으며, 최대 해상도가 지정된 경우에는
+ * 이미지의 가로/세로 비율을 유지하면서 최대 해상도 이내로 축소한 후 인코딩한다.
+ * 인코딩에 사용되는 임시 버퍼는 쓰레드별로 재사용되기 때문에 하나의 객체를
+ * 여러 쓰레드에서 동시에 사용할 수 있다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class JpegEncoder {
+	public static final int DEFAULT_QUALITY = 95;
+	public static final JpegEncoder DEFAULT = new JpegEncoder(DEFAULT_QUALITY, null);
+
+	private final int m_quality;
+	private final Size m_maxSize;	// null이면 원본 해상도를 유지한다.
+	private final ThreadLocal<Buffers> m_buffers = ThreadLocal.withInitial(Buffers::new);
+
+	/**
+	 * JPEG 인코더를 생성한다.
+	 * <p>
+	 * 본 생성자는 OpenCV native 라이브러리를 사용하지 않기 때문에 라이브러리가
+	 * 적재되기 전에도 호출할 수 있다.
+	 *
+	 * @param quality	JPEG 품질 (1-100)
+	 * @param maxSize	최대 해상도. 축소하지 않는 경우는 {@code null}.
+	 */
+	public JpegEncoder(int quality, Size maxSize) {
+		Utilities.checkArgument(quality >= 1 && quality <= 100, "invalid JPEG quality: " + quality);
+		Utilities.checkArgument(maxSize == null || (maxSize.width > 0 && maxSize.height > 0),
+								"invalid max size: " + maxSize);
+
+		m_quality = quality;
+		m_maxSize = maxSize;
+	}
+
+	public int getQuality() {
+		return m_quality;
+	}
+
+	public Size getMaxSize() {
+		return m_maxSize;
+	}
+
+	/**
+	 * 주어진 인코더와 인코딩 품질 및 최대 해상도가 같은지 여부를 반환한다.
+	 *
+	 * @param other	비교 대상 인코더
+	 * @return	설정이 같은 경우는 {@code true}, 그렇지 않은 경우는 {@code false}.
+	 */
+	public boolean hasSameSettings(JpegEncoder other) {
+		return other != null && m_quality == other.m_quality && Objects.equals(m_maxSize, other.m_maxSize);
+	}
+
+	/**
+	 * 주어진 해상도의 이미지를 인코딩하는 경우의 출력 해상도를 반환한다.
+	 *
+	 * @param size	입력 이미지 해상도
+	 * @return	출력 이미지 해상도
+	 */
+	public Size getOutputSize(Size size) {
+		if ( m_maxSize == null ) {
+			return size;
+		}
+
+		double ratio = Math.min(m_maxSize.width / size.width, m_maxSize.height / size.height);
+		if ( ratio >= 1 ) {
+			return size;
+		}
+		return new Size(Math.round(size.width * ratio), Math.round(size.height * ratio));
+	}
+
+	public byte[] encode(Mat image) {
+		Buffers bufs = m_buffers.get();
+
+		Mat src = image;
+		Size outSize = getOutputSize(image.size());
+		if ( !outSize.equals(image.size()) ) {
+			Imgproc.resize(image, bufs.m_resized, outSize, 0, 0, Imgproc.INTER_AREA);
+			src = bufs.m_resized;
+		}
+
+		Imgcodecs.imencode(".jpg", src, bufs.m_jpeg, bufs.m_params);
+		return bufs.m_jpeg.toArray();
+	}
+
+	@Override
+	public String toString() {
+		String sizeStr = (m_maxSize != null)
+						? String.format("%dx%d", (int)m_maxSize.width, (int)m_maxSize.height) : "original";
+		return String.format("JpegEncoder[quality=%d, max_size=%s]", m_quality, sizeStr);
+	}
+
+	private final class Buffers {
+		private final MatOfInt m_params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, m_quality);
+		private final MatOfByte m_jpeg = new MatOfByte();
+		private final Mat m_resized = new Mat();
+	}
+}
@@ -0,0 +1,195 @@
+package opencvj;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import utils.Utilities;
+
+
+/**
+ * <code>MatPool</code>은 미리 할당된 {@link Mat} 객체들을 재사용하기 위한 pool을 정의한다.
+ * <p>
+ * Pool은 해상도와 타입 별로 최대 갯수가 제한된 슬롯들을 링 버퍼 형태로 관리한다.
+ * 슬롯은 반환된 슬롯이 없을 때만 새로 할당되기 때문에 실제 동시에 사용된 만큼만 할당된다.
+ * 최대 갯수의 슬롯이 모두 사용 중인 경우에는 새로 할당하지 않고 {@code null}을 반환하기 때문에
+ * 호출자는 해당 프레임을 버리는 등의 방법으로 처리하여야 한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class MatPool implements AutoCloseable {
+	private static final Logger s_logger = LoggerFactory.getLogger(MatPool.class);
+
+	private final int m_slotCount;
+	private final Map<Shape,Ring> m_rings = new ConcurrentHashMap<>();
+	private final AtomicLong m_missCount = new AtomicLong(0);
+	private volatile boolean m_closed = false;
+
+	public MatPool(int slotCount) {
+		Utilities.checkArgument(slotCount > 0, "invalid slot count: " + slotCount);
+
+		m_slotCount = slotCount;
+	}
+
+	/**
+	 * 주어진 해상도와 타입의 슬롯을 할당한다.
+	 * <p>
+	 * 반환된 슬롯의 참조 횟수는 1이고, 사용이 끝난 후에는 반드시 {@link Slot#release()}를
+	 * 호출하여 pool에 반환하여야 한다.
+	 *
+	 * @param size	이미지 해상도
+	 * @param type	이미지 타입 ({@link org.opencv.core.CvType})
+	 * @return	할당된 슬롯. 모든 슬롯이 사용 중인 경우는 {@code null}.
+	 */
+	public Slot lease(Size size, int type) {
+		if ( m_closed ) {
+			throw new IllegalStateException("closed: " + this);
+		}
+
+		Ring ring = m_rings.computeIfAbsent(new Shape(size, type), Ring::new);
+		Slot slot = ring.take();
+		if ( slot == null ) {
+			m_missCount.incrementAndGet();
+			return null;
+		}
+
+		slot.m_refCount.set(1);
+		return slot;
+	}
+
+	public long getMissCount() {
+		return m_missCount.get();
+	}
+
+	@Override
+	public void close() {
+		m_closed = true;
+
+		for ( Ring ring: m_rings.values() ) {
+			ring.releaseAll();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("MatPool[slots=%d, shapes=%d, misses=%d]",
+							m_slotCount, m_rings.size(), m_missCount.get());
+	}
+
+	public static final class Slot {
+		private final Ring m_ring;
+		private final Mat m_mat;
+		private final AtomicInteger m_refCount = new AtomicInteger(0);
+
+		private Slot(Ring ring, Mat mat) {
+			m_ring = ring;
+			m_mat = mat;
+		}
+
+		public Mat mat() {
+			return m_mat;
+		}
+
+		public Slot retain() {
+			m_refCount.incrementAndGet();
+			return this;
+		}
+
+		public void release() {
+			int count = m_refCount.decrementAndGet();
+			if ( count == 0 ) {
+				m_ring.giveBack(this);
+			}
+			else if ( count < 0 ) {
+				throw new IllegalStateException("slot released too many times: " + this);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Slot[%s, refs=%d]", m_ring.m_shape, m_refCount.get());
+		}
+	}
+
+	private final class Ring {
+		private final Shape m_shape;
+		private final ArrayDeque<Slot> m_free;
+		private int m_allocated = 0;	// 지금까지 할당된 슬롯 수
+
+		Ring(Shape shape) {
+			m_shape = shape;
+			m_free = new ArrayDeque<>(m_slotCount);
+		}
+
+		synchronized Slot take() {
+			Slot slot = m_free.poll();
+			if ( slot == null && m_allocated < m_slotCount ) {
+				slot = new Slot(this, new Mat(m_shape.m_size, m_shape.m_type));
+				++m_allocated;
+
+				if ( s_logger.isDebugEnabled() ) {
+					s_logger.debug("allocated: shape={}, slots={}/{}", m_shape, m_allocated, m_slotCount);
+				}
+			}
+			return slot;
+		}
+
+		synchronized void giveBack(Slot slot) {
+			// close()와 동시에 반환되는 슬롯이 누락되지 않도록 ring 단위로 동기화한다.
+			if ( m_closed ) {
+				slot.m_mat.release();
+			}
+			else {
+				m_free.add(slot);
+			}
+		}
+
+		synchronized void releaseAll() {
+			Slot slot;
+			while ( (slot = m_free.poll()) != null ) {
+				slot.m_mat.release();
+			}
+		}
+	}
+
+	private static final class Shape {
+		private final Size m_size;
+		private final int m_type;
+
+		Shape(Size size, int type) {
+			m_size = size;
+			m_type = type;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if ( this == obj ) {
+				return true;
+			}
+			else if ( obj == null || obj.getClass() != Shape.class ) {
+				return false;
+			}
+
+			Shape other = (Shape)obj;
+			return m_size.equals(other.m_size) && m_type == other.m_type;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(m_size.width, m_size.height, m_type);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%dx%d:%d", (int)m_size.width, (int)m_size.height, m_type);
+		}
+	}
+}
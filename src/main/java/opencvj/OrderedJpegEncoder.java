@@ -0,0 +1,179 @@
+package opencvj;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import utils.Utilities;
+
+
+/**
+ * <code>OrderedJpegEncoder</code>는 여러 이미지를 병렬로 JPEG 인코딩하면서,
+ * 인코딩 결과는 요청된 순서대로 전달하는 기능을 제공한다.
+ * <p>
+ * 동시에 인코딩 중인 이미지의 수는 생성시 지정된 최대 값으로 제한되며, 이를 초과하는
+ * 요청은 {@link #submit(Mat, Object)}에서 거부된다. 인코딩 결과는 {@link BiConsumer}를 통해
+ * 전달되고, 인코딩에 실패한 경우는 결과 값이 {@code null}로 전달된다.
+ * 결과 전달용 {@link Executor}가 주어지지 않은 경우는 인코딩을 마친 쓰레드에서 결과를 전달하고,
+ * 주어진 경우는 해당 executor에서 전달하기 때문에 결과 처리가 지연되더라도 인코딩 쓰레드를
+ * 점유하지 않는다. 두 경우 모두 결과가 전달될 때까지는 인코딩 중인 이미지로 간주된다.
+ *
+ * @param <T>	인코딩 요청과 함께 전달되는 태그 타입
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class OrderedJpegEncoder<T> implements AutoCloseable {
+	private static final Logger s_logger = LoggerFactory.getLogger(OrderedJpegEncoder.class);
+
+	private final JpegEncoder m_encoder;
+	private final Executor m_executor;
+	private final Executor m_deliveryExecutor;	// 인코딩 쓰레드에서 결과를 전달하는 경우는 null
+	private final int m_maxInFlight;
+	private final BiConsumer<T,byte[]> m_consumer;
+
+	private final ArrayDeque<Task> m_pending;
+	private boolean m_delivering = false;
+	private boolean m_closed = false;
+
+	public OrderedJpegEncoder(JpegEncoder encoder, Executor executor, int maxInFlight,
+								BiConsumer<T,byte[]> consumer) {
+		this(encoder, executor, null, maxInFlight, consumer);
+	}
+
+	/**
+	 * 순서 보장 JPEG 인코더를 생성한다.
+	 *
+	 * @param encoder	JPEG 인코더
+	 * @param executor	인코딩에 사용할 executor
+	 * @param deliveryExecutor	인코딩 결과 전달에 사용할 executor. 인코딩을 마친 쓰레드에서
+	 * 							전달하는 경우는 {@code null}.
+	 * @param maxInFlight	동시에 인코딩 중일 수 있는 최대 이미지 수
+	 * @param consumer	인코딩 결과를 전달받을 consumer
+	 */
+	public OrderedJpegEncoder(JpegEncoder encoder, Executor executor, Executor deliveryExecutor,
+								int maxInFlight, BiConsumer<T,byte[]> consumer) {
+		Utilities.checkNotNullArgument(encoder);
+		Utilities.checkNotNullArgument(executor);
+		Utilities.checkArgument(maxInFlight > 0, "invalid maxInFlight: " + maxInFlight);
+
+		m_encoder = encoder;
+		m_executor = executor;
+		m_deliveryExecutor = deliveryExecutor;
+		m_maxInFlight = maxInFlight;
+		m_consumer = consumer;
+		m_pending = new ArrayDeque<>(maxInFlight);
+	}
+
+	public JpegEncoder getEncoder() {
+		return m_encoder;
+	}
+
+	/**
+	 * 주어진 이미지의 인코딩을 요청한다.
+	 * <p>
+	 * 이미지는 인코딩 결과가 전달될 때까지 변경되거나 해제되지 않아야 한다.
+	 *
+	 * @param image	인코딩할 이미지
+	 * @param tag	인코딩 결과와 함께 전달될 태그
+	 * @return	요청이 접수된 경우는 {@code true}, 인코딩 중인 이미지가 너무 많거나
+	 * 			이미 close된 경우는 {@code false}.
+	 */
+	public boolean submit(Mat image, T tag) {
+		Task task = new Task(tag);
+		synchronized ( this ) {
+			if ( m_closed || m_pending.size() >= m_maxInFlight ) {
+				return false;
+			}
+			m_pending.add(task);
+		}
+
+		try {
+			m_executor.execute(() -> {
+				byte[] jpeg = null;
+				try {
+					jpeg = m_encoder.encode(image);
+				}
+				catch ( Throwable e ) {
+					s_logger.warn("fails to encode image: cause={}", e.toString());
+				}
+				complete(task, jpeg);
+			});
+		}
+		catch ( RejectedExecutionException e ) {
+			complete(task, null);
+		}
+
+		return true;
+	}
+
+	@Override
+	public void close() throws InterruptedException {
+		synchronized ( this ) {
+			m_closed = true;
+			while ( !m_pending.isEmpty() || m_delivering ) {
+				wait();
+			}
+		}
+	}
+
+	private void complete(Task task, byte[] jpeg) {
+		synchronized ( this ) {
+			task.m_jpeg = jpeg;
+			task.m_done = true;
+
+			// 이미 다른 쓰레드가 결과를 전달 중이면 그 쓰레드가 순서대로 전달한다.
+			if ( m_delivering ) {
+				return;
+			}
+			m_delivering = true;
+		}
+
+		if ( m_deliveryExecutor != null ) {
+			try {
+				m_deliveryExecutor.execute(this::deliver);
+				return;
+			}
+			catch ( RejectedExecutionException e ) {
+				// 전달용 executor가 종료된 경우는 현 쓰레드에서 전달한다.
+			}
+		}
+		deliver();
+	}
+
+	private void deliver() {
+		while ( true ) {
+			Task head;
+			synchronized ( this ) {
+				head = m_pending.peek();
+				if ( head == null || !head.m_done ) {
+					m_delivering = false;
+					notifyAll();
+
+					return;
+				}
+				m_pending.poll();
+			}
+
+			try {
+				m_consumer.accept(head.m_tag, head.m_jpeg);
+			}
+			catch ( Throwable e ) {
+				s_logger.warn("fails to deliver the encoded image: cause={}", e.toString());
+			}
+		}
+	}
+
+	private final class Task {
+		private final T m_tag;
+		private byte[] m_jpeg;
+		private boolean m_done = false;
+
+		Task(T tag) {
+			m_tag = tag;
+		}
+	}
+}